@@ -0,0 +1,154 @@
+package tetris;// tetris.AnytimeBrain.java
+
+/**
+ * A brain that always answers in time. Each decision runs
+ * tetris.BeamBrain searches one piece deeper at a time -- depth 1 (which
+ * is just tetris.DefaultBrain), then 2, 3, ... up to maxDepth -- until
+ * the deadline passes, and plays the move of the deepest search that
+ * finished. Depth 1 always runs to the end, so there is always a move
+ * if one exists.
+ * <p>
+ * The plain tetris.Brain methods use a deadline of now plus the time
+ * budget; bestMove() with an explicit deadline is there for callers
+ * that know better, e.g. how long until the piece has to move.
+ * getLastDepth() and getAverageDepth() tell how deep the searches got.
+ * Not thread-safe.
+ */
+public class AnytimeBrain implements Brain {
+	public static final int DEFAULT_MAX_DEPTH = 5;
+	public static final long DEFAULT_BUDGET_NANOS = 50_000_000L;    // 50 ms
+
+	private final BeamBrain[] brains;    // brains[d - 1] searches depth d
+	private final Brain.Move found;
+	private long budgetNanos;
+
+	// Stats
+	private int lastDepth;
+	private long searches;
+	private long depthSum;
+
+
+	/**
+	 * Creates a brain with the default depth, beam width and budget.
+	 */
+	public AnytimeBrain() {
+		this(DEFAULT_MAX_DEPTH, BeamBrain.DEFAULT_WIDTH, DEFAULT_BUDGET_NANOS);
+	}
+
+
+	/**
+	 * Creates a brain that deepens up to maxDepth pieces with beams
+	 * of the given width, and gives each plain bestMove() budgetNanos.
+	 */
+	public AnytimeBrain(int maxDepth, int width, long budgetNanos) {
+		if (maxDepth < 1) throw new RuntimeException("Max depth must be at least 1");
+		brains = new BeamBrain[maxDepth];
+		for (int d = 1; d <= maxDepth; d++) brains[d - 1] = new BeamBrain(d, width);
+		found = new Brain.Move();
+		this.budgetNanos = budgetNanos;
+	}
+
+
+	/**
+	 * Sets how long the plain bestMove() calls may take, in nanoseconds.
+	 */
+	public void setBudgetNanos(long budgetNanos) {
+		this.budgetNanos = budgetNanos;
+	}
+
+
+	/**
+	 * Returns the time budget of the plain bestMove() calls.
+	 */
+	public long getBudgetNanos() {
+		return budgetNanos;
+	}
+
+
+	public Brain.Move bestMove(Board board, Piece piece, int limitHeight, Brain.Move move) {
+		return bestMove(board, piece, null, limitHeight, move);
+	}
+
+
+	@Override
+	public Brain.Move bestMove(Board board, Piece piece, Piece nextPiece, int limitHeight, Brain.Move move) {
+		return bestMove(board, piece, nextPiece, limitHeight, move, System.nanoTime() + budgetNanos);
+	}
+
+
+	/**
+	 * Returns the move of the deepest search that finished before
+	 * System.nanoTime() reached deadline, or null if the piece can't
+	 * be played at all. nextPiece may be null.
+	 */
+	public Brain.Move bestMove(Board board, Piece piece, Piece nextPiece, int limitHeight, Brain.Move move,
+							   long deadline) {
+		int depth = 0;
+		for (BeamBrain brain : brains) {
+			// The first search always finishes, the rest only in time.
+			brain.setDeadline((depth == 0) ? 0 : deadline);
+			Brain.Move result = brain.bestMove(board, piece, nextPiece, limitHeight, found);
+			if (result == null) {
+				if (depth == 0) return null;    // no play at all
+				break;
+			}
+
+			if (move == null) move = new Brain.Move();
+			move.x = result.x;
+			move.y = result.y;
+			move.piece = result.piece;
+			move.score = result.score;
+			depth++;
+
+			if (System.nanoTime() - deadline > 0) break;
+		}
+
+		lastDepth = depth;
+		searches++;
+		depthSum += depth;
+		return move;
+	}
+
+
+	/**
+	 * Returns the depth of the search the last move came from.
+	 */
+	public int getLastDepth() {
+		return lastDepth;
+	}
+
+
+	/**
+	 * Returns the average depth of the moves since the last resetStats().
+	 */
+	public double getAverageDepth() {
+		return (searches == 0) ? 0 : ((double) depthSum) / searches;
+	}
+
+
+	/**
+	 * Returns how many boards the searches have rated
+	 * since the last resetStats().
+	 */
+	public long getNodes() {
+		long nodes = 0;
+		for (BeamBrain brain : brains) nodes += brain.getNodes();
+		return nodes;
+	}
+
+
+	/**
+	 * Zeroes the depth and node stats.
+	 */
+	public void resetStats() {
+		lastDepth = 0;
+		searches = 0;
+		depthSum = 0;
+		for (BeamBrain brain : brains) brain.resetStats();
+	}
+
+
+	public String toString() {
+		return String.format("last depth %d, average depth %.2f, %d nodes", lastDepth, getAverageDepth(), getNodes());
+	}
+}
@@ -0,0 +1,78 @@
+package tetris;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/*
+  Unit test for tetris.AnytimeBrain and the deadline of tetris.BeamBrain.
+ */
+public class AnytimeBrainTest {
+	private static final int LIMIT = JTetris.HEIGHT;
+	private Piece[] pieces;
+	private Board board;
+
+	@Before
+	public void setUp() {
+		pieces = Piece.getPieces();
+		GameEngine game = new GameEngine(9);
+		game.setPieceLimit(20);
+		game.play(new DefaultBrain());
+		board = game.getBoard();
+	}
+
+	// With all the time in the world, it is the deepest beam search.
+	@Test
+	public void testFullDepth() {
+		AnytimeBrain brain = new AnytimeBrain(3, 2, Long.MAX_VALUE / 2);
+		Brain.Move expected = new BeamBrain(3, 2).bestMove(board, pieces[1], pieces[2], LIMIT, null);
+		Brain.Move move = brain.bestMove(board, pieces[1], pieces[2], LIMIT, null);
+
+		assertEquals(3, brain.getLastDepth());
+		assertSame(expected.piece, move.piece);
+		assertEquals(expected.x, move.x);
+		assertEquals(expected.score, move.score, 0);
+	}
+
+	// Past the deadline, it still plays -- like tetris.DefaultBrain.
+	@Test
+	public void testNoTime() {
+		AnytimeBrain brain = new AnytimeBrain();
+		for (Piece piece : pieces) {
+			Brain.Move expected = new DefaultBrain().bestMove(board, piece, LIMIT, null);
+			Brain.Move move = brain.bestMove(board, piece, pieces[0], LIMIT, null, System.nanoTime() - 1);
+			assertEquals(1, brain.getLastDepth());
+			assertSame(expected.piece, move.piece);
+			assertEquals(expected.x, move.x);
+		}
+		assertEquals(1.0, brain.getAverageDepth(), 0);
+
+		brain.resetStats();
+		assertEquals(0, brain.getAverageDepth(), 0);
+	}
+
+	// An aborted search gives up cleanly.
+	@Test
+	public void testAbort() {
+		String before = board.toString();
+		long hash = board.getHash();
+
+		BeamBrain brain = new BeamBrain(4, 8);
+		brain.setDeadline(System.nanoTime());
+		assertNull(brain.bestMove(board, pieces[0], pieces[1], LIMIT, null));
+		assertTrue(brain.wasAborted());
+		assertEquals(before, board.toString());
+		assertEquals(hash, board.getHash());
+		board.sanityCheck();
+
+		brain.setDeadline(0);
+		assertNotNull(brain.bestMove(board, pieces[0], pieces[1], LIMIT, null));
+		assertFalse(brain.wasAborted());
+	}
+}
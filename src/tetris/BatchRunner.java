@@ -0,0 +1,248 @@
+package tetris;// tetris.BatchRunner.java
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+/**
+ * Plays many independent tetris.GameEngine games of a brain at once,
+ * spread over a fork-join pool, and collects pieces placed, rows
+ * cleared and score for every game.
+ * <p>
+ * Every worker thread gets its own brain (from the given supplier,
+ * so brains with state are safe) and its own board, which is cleared
+ * and reused from one game to the next. Game i is always seeded with
+ * seedFor(baseSeed, i), so a batch gives the same results no matter
+ * how many threads run it.
+ * <pre>
+ * tetris.BatchRunner runner = new tetris.BatchRunner(tetris.DefaultBrain::new);
+ * tetris.BatchRunner.Result result = runner.run(1000, 42);
+ * double average = result.mean(result.scores);
+ * </pre>
+ */
+public class BatchRunner {
+	// Games are split into tasks of at most this many.
+	private static final int GAMES_PER_TASK = 4;
+
+	private final Supplier<Brain> brains;
+	private final Supplier<Board> boards;
+	private final ForkJoinPool pool;
+	private Piece[] pieces = Piece.getPieces();
+	private int pieceLimit;
+	private ReplayWriter recorder;    // null if not recording
+
+
+	/**
+	 * Creates a runner that plays on standard tetris.JTetris sized boards
+	 * using every core.
+	 */
+	public BatchRunner(Supplier<Brain> brains) {
+		this(brains, () -> new Board(JTetris.WIDTH, JTetris.HEIGHT + JTetris.TOP_SPACE),
+				Runtime.getRuntime().availableProcessors());
+	}
+
+
+	/**
+	 * Creates a runner with its own pool of the given number of threads.
+	 * The suppliers are called once per worker thread.
+	 */
+	public BatchRunner(Supplier<Brain> brains, Supplier<Board> boards, int threads) {
+		this.brains = brains;
+		this.boards = boards;
+		this.pool = new ForkJoinPool(threads);
+	}
+
+
+	/**
+	 * Runs a batch from the command line:
+	 * BatchRunner [games] [threads] [seed] [piece file] [replay file]
+	 */
+	public static void main(String[] args) throws IOException {
+		int games = (args.length > 0) ? Integer.parseInt(args[0]) : 1000;
+		int threads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		long seed = (args.length > 2) ? Long.parseLong(args[2]) : 0;
+
+		// Build the pieces before the workers start.
+		PieceRegistry.warmUp();
+
+		BatchRunner runner = new BatchRunner(DefaultBrain::new,
+				() -> new Board(JTetris.WIDTH, JTetris.HEIGHT + JTetris.TOP_SPACE), threads);
+		if (args.length > 3) runner.setPieces(PieceLoader.load(Paths.get(args[3])));
+		ReplayWriter recorder = (args.length > 4) ? new ReplayWriter(Paths.get(args[4])) : null;
+		runner.setRecorder(recorder);
+
+		long start = System.currentTimeMillis();
+		Result result = runner.run(games, seed);
+		long delta = Math.max(1, System.currentTimeMillis() - start);
+		runner.shutdown();
+		if (recorder != null) recorder.close();
+
+		System.out.println(games + " games on " + threads + " threads in " + delta + " ms ("
+				+ (games * 1000L / delta) + " games/s)");
+		System.out.println("pieces " + result.summary(result.pieces));
+		System.out.println("rows   " + result.summary(result.rows));
+		System.out.println("score  " + result.summary(result.scores));
+	}
+
+
+	/**
+	 * Returns the seed of game number game in a batch
+	 * started from baseSeed. Consecutive games get well
+	 * spread out seeds (splitmix64 finalizer).
+	 */
+	public static long seedFor(long baseSeed, int game) {
+		long z = baseSeed + (game + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+
+	/**
+	 * Makes every game play with the given piece set
+	 * instead of the standard one.
+	 */
+	public void setPieces(Piece[] pieces) {
+		this.pieces = pieces;
+	}
+
+
+	/**
+	 * Makes every game stop after the given number of pieces.
+	 * 0 means no limit.
+	 */
+	public void setPieceLimit(int pieceLimit) {
+		this.pieceLimit = pieceLimit;
+	}
+
+
+	/**
+	 * Records every game to the given replay file, or stops
+	 * recording if it is null. Games end up in the file in the
+	 * order they finish, which is not always game number order.
+	 */
+	public void setRecorder(ReplayWriter recorder) {
+		this.recorder = recorder;
+	}
+
+
+	/**
+	 * Plays the given number of games and waits for all of them.
+	 */
+	public Result run(int games, long baseSeed) {
+		Result result = new Result(games);
+		ThreadLocal<Brain> brain = ThreadLocal.withInitial(brains);
+		ThreadLocal<Board> board = ThreadLocal.withInitial(boards);
+
+		pool.invoke(new Games(result, baseSeed, brain, board, 0, games));
+		return result;
+	}
+
+
+	/**
+	 * Stops the worker threads.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+
+	/**
+	 * Fork-join task playing games [from, to), split in half
+	 * until there are only a few left.
+	 */
+	private class Games extends RecursiveAction {
+		private final Result result;
+		private final long baseSeed;
+		private final ThreadLocal<Brain> brain;
+		private final ThreadLocal<Board> board;
+		private final int from;
+		private final int to;
+
+		Games(Result result, long baseSeed, ThreadLocal<Brain> brain, ThreadLocal<Board> board, int from, int to) {
+			this.result = result;
+			this.baseSeed = baseSeed;
+			this.brain = brain;
+			this.board = board;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > GAMES_PER_TASK) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Games(result, baseSeed, brain, board, from, middle),
+						new Games(result, baseSeed, brain, board, middle, to));
+				return;
+			}
+
+			for (int i = from; i < to; i++) {
+				Board b = board.get();
+				b.commit();
+				b.clear();
+
+				long seed = seedFor(baseSeed, i);
+				GameEngine game = new GameEngine(b, new Random(seed), pieces);
+				game.setPieceLimit(pieceLimit);
+				if (recorder != null) game.setRecorder(recorder, seed);
+				game.play(brain.get());
+
+				// Each game writes only its own slot.
+				result.pieces[i] = game.getCount();
+				result.rows[i] = game.getRowsCleared();
+				result.scores[i] = game.getScore();
+			}
+		}
+	}
+
+
+	/**
+	 * Per-game results of a batch, indexed by game number,
+	 * plus a few helpers to summarize them.
+	 */
+	public static class Result {
+		public final int[] pieces;
+		public final int[] rows;
+		public final int[] scores;
+
+		Result(int games) {
+			pieces = new int[games];
+			rows = new int[games];
+			scores = new int[games];
+		}
+
+		/**
+		 * Returns the average of the given per-game values.
+		 */
+		public double mean(int[] values) {
+			long sum = 0;
+			for (int value : values) sum += value;
+			return (values.length == 0) ? 0 : ((double) sum) / values.length;
+		}
+
+		/**
+		 * Returns the value below which the given fraction
+		 * (0.0 - 1.0) of the games fall.
+		 */
+		public int percentile(int[] values, double fraction) {
+			if (values.length == 0) return 0;
+			int[] sorted = values.clone();
+			Arrays.sort(sorted);
+			int index = (int) Math.ceil(fraction * sorted.length) - 1;
+			return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+		}
+
+		/**
+		 * Returns mean, min, median, p90 and max of the given values.
+		 */
+		public String summary(int[] values) {
+			return String.format("mean %.1f  min %d  p50 %d  p90 %d  max %d", mean(values),
+					percentile(values, 0), percentile(values, 0.5), percentile(values, 0.9), percentile(values, 1));
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package tetris;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/*
+  Unit test for tetris.BatchRunner.
+ */
+public class BatchRunnerTest {
+
+	// The thread count must not change any result
+	@Test
+	public void testDeterministic() {
+		BatchRunner one = new BatchRunner(DefaultBrain::new, () -> new Board(10, 24), 1);
+		BatchRunner four = new BatchRunner(DefaultBrain::new, () -> new BitBoard(10, 24), 4);
+		one.setPieceLimit(200);
+		four.setPieceLimit(200);
+
+		BatchRunner.Result first = one.run(24, 5);
+		BatchRunner.Result second = four.run(24, 5);
+		one.shutdown();
+		four.shutdown();
+
+		assertArrayEquals(first.pieces, second.pieces);
+		assertArrayEquals(first.rows, second.rows);
+		assertArrayEquals(first.scores, second.scores);
+	}
+
+	// Game i of a batch is the same game GameEngine plays with seedFor(i)
+	@Test
+	public void testSeeds() {
+		BatchRunner runner = new BatchRunner(DefaultBrain::new);
+		BatchRunner.Result result = runner.run(3, 99);
+		runner.shutdown();
+
+		GameEngine game = new GameEngine(BatchRunner.seedFor(99, 2));
+		game.play(new DefaultBrain());
+		assertEquals(game.getScore(), result.scores[2]);
+		assertEquals(game.getCount(), result.pieces[2]);
+	}
+
+	@Test
+	public void testSummary() {
+		BatchRunner.Result result = new BatchRunner.Result(4);
+		System.arraycopy(new int[]{4, 1, 3, 2}, 0, result.scores, 0, 4);
+		assertEquals(2.5, result.mean(result.scores), 1e-9);
+		assertEquals(1, result.percentile(result.scores, 0));
+		assertEquals(2, result.percentile(result.scores, 0.5));
+		assertEquals(4, result.percentile(result.scores, 1));
+	}
+}
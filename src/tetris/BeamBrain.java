@@ -0,0 +1,390 @@
+package tetris;// tetris.BeamBrain.java
+
+import java.util.Arrays;
+
+/**
+ * A tetris.DefaultBrain that searches depth pieces ahead with a beam
+ * of width boards. The current piece, and the next piece if it is
+ * known, are searched ply by ply: every placement of the ply's piece
+ * on every board in the beam is rated, and the width best ratings
+ * make up the next beam. The pieces after that aren't known, so each
+ * board left in the beam is valued by the expected rating over all
+ * the pieces of the set (equally likely), each one played greedily to
+ * its best rated spot. The move played is the first placement on the
+ * way to the board with the best value.
+ * <p>
+ * Beam nodes are kept in arrays allocated once per brain -- a node is
+ * just its parent, its placement and its rating -- and the board of a
+ * node is rebuilt when needed by replaying its placements from the root
+ * with mark() and rollbackTo(), so the search never copies a board.
+ * <p>
+ * Every rated board counts as one node. getNodes() and getNanos() add
+ * up over all calls (until resetStats()), so getNodesPerSecond() shows
+ * what a given depth and width cost on this machine:
+ * <pre>
+ * java tetris.BeamBrain [depth] [width] [games]
+ * </pre>
+ * With setDeadline(), a search that runs past the deadline gives up
+ * and returns null, with wasAborted() telling that apart from having
+ * no move at all -- see tetris.AnytimeBrain.
+ * Like tetris.DefaultBrain, not thread-safe.
+ */
+public class BeamBrain extends DefaultBrain {
+	public static final int DEFAULT_DEPTH = 2;
+	public static final int DEFAULT_WIDTH = 4;
+
+	private final int depth;
+	private final int width;
+	private final Piece[] chancePieces;
+
+	// The beam of every known ply: parent node in the ply
+	// before, placement, and rating of the board it leads to.
+	private final int[][] parents;
+	private final Piece[][] nodePieces;
+	private final int[][] nodeXs;
+	private final int[][] nodeYs;
+	private final double[][] nodeScores;
+	private final int[] sizes;
+
+	// Every child of the ply being expanded, and the
+	// best width of them sorted best first.
+	private int[] candParents = new int[0];
+	private Piece[] candPieces = new Piece[0];
+	private int[] candXs = new int[0];
+	private int[] candYs = new int[0];
+	private double[] candScores = new double[0];
+	private int candCount;
+	private final int[] best;
+
+	// One move per unknown ply for the greedy playouts.
+	private final Brain.Move[] greedy;
+
+	private int limitHeight;
+	private long deadline;      // System.nanoTime() to give up at, 0 for none
+	private boolean aborted;
+	private long nodes;
+	private long nanos;
+
+
+	/**
+	 * Creates a brain with the default depth and width.
+	 */
+	public BeamBrain() {
+		this(DEFAULT_DEPTH, DEFAULT_WIDTH);
+	}
+
+
+	/**
+	 * Creates a brain that looks depth pieces ahead (counting the
+	 * current one) keeping width boards per ply, with the standard
+	 * pieces as the unknown ones.
+	 */
+	public BeamBrain(int depth, int width) {
+		this(depth, width, Piece.getPieces());
+	}
+
+
+	/**
+	 * Creates a brain that looks depth pieces ahead keeping width
+	 * boards per ply, taking the unknown pieces from the given set.
+	 */
+	public BeamBrain(int depth, int width, Piece[] chancePieces) {
+		if (depth < 1 || width < 1) throw new RuntimeException("Beam depth and width must be at least 1");
+		this.depth = depth;
+		this.width = width;
+		this.chancePieces = chancePieces;
+
+		// Only the current and the next piece are ever known.
+		int known = Math.min(depth, 2);
+		parents = new int[known][width];
+		nodePieces = new Piece[known][width];
+		nodeXs = new int[known][width];
+		nodeYs = new int[known][width];
+		nodeScores = new double[known][width];
+		sizes = new int[known];
+		best = new int[width];
+
+		greedy = new Brain.Move[depth];
+		for (int i = 0; i < depth; i++) greedy[i] = new Brain.Move();
+	}
+
+
+	/**
+	 * Plays a few seeded games and prints the search speed:
+	 * BeamBrain [depth] [width] [games]
+	 */
+	public static void main(String[] args) {
+		int depth = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_DEPTH;
+		int width = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_WIDTH;
+		int games = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+
+		BeamBrain brain = new BeamBrain(depth, width);
+		long pieces = 0;
+		long score = 0;
+		for (int i = 0; i < games; i++) {
+			GameEngine game = new GameEngine(i);
+			game.setPieceLimit(1000);
+			game.play(brain);
+			pieces += game.getCount();
+			score += game.getScore();
+		}
+
+		System.out.println("depth " + depth + ", width " + width + ": " + brain.getNodes() + " nodes, "
+				+ (long) brain.getNodesPerSecond() + " nodes/s, "
+				+ String.format("%.3f", brain.getNanos() / 1e6 / Math.max(1, pieces)) + " ms/piece, "
+				+ "average score " + (score / games));
+	}
+
+
+	/**
+	 * Without a next piece, only the current one is known.
+	 */
+	@Override
+	public Brain.Move bestMove(Board board, Piece piece, int limitHeight, Brain.Move move) {
+		return bestMove(board, piece, null, limitHeight, move);
+	}
+
+
+	@Override
+	public Brain.Move bestMove(Board board, Piece piece, Piece nextPiece, int limitHeight, Brain.Move move) {
+		long start = System.nanoTime();
+		this.limitHeight = limitHeight;
+		aborted = false;
+		board.commit();
+
+		// Search the known plies, stopping early if a ply has nowhere to go.
+		int known = Math.min(depth, (nextPiece != null) ? 2 : 1);
+		int last = 0;
+		expand(board, 0, piece);
+		if (sizes[0] == 0 || aborted) {
+			nanos += System.nanoTime() - start;
+			return null;    // could not find a play at all, or out of time
+		}
+		if (known > 1) {
+			expand(board, 1, nextPiece);
+			if (sizes[1] > 0) last = 1;
+		}
+
+		// Value what is left of the beam, the unknown pieces included.
+		int unknown = (last == known - 1) ? depth - known : 0;
+		double bestScore = Double.POSITIVE_INFINITY;
+		int bestNode = -1;
+		for (int n = 0; n < sizes[last] && !outOfTime(); n++) {
+			double score;
+			if (last < known - 1) score = 1e20;    // next piece can't be played, as bad as it gets
+			else if (unknown == 0) score = nodeScores[last][n];
+			else {
+				int root = board.mark();
+				replay(board, last, n);
+				score = expected(board, unknown);
+				board.rollbackTo(root);
+			}
+
+			if (bestNode < 0 || score < bestScore) {
+				bestScore = score;
+				bestNode = n;
+			}
+		}
+
+		if (aborted) {
+			nanos += System.nanoTime() - start;
+			return null;
+		}
+
+		// Walk back to the placement of the current piece.
+		for (int ply = last; ply > 0; ply--) bestNode = parents[ply][bestNode];
+
+		if (move == null) move = new Brain.Move();
+		move.x = nodeXs[0][bestNode];
+		move.y = nodeYs[0][bestNode];
+		move.piece = nodePieces[0][bestNode];
+		move.score = bestScore;
+
+		nanos += System.nanoTime() - start;
+		return move;
+	}
+
+
+	/**
+	 * Fills the beam of the given ply with the best placements of
+	 * piece on the boards of the ply before (or on the board itself
+	 * for ply 0).
+	 */
+	private void expand(Board board, int ply, Piece piece) {
+		candCount = 0;
+		int parentCount = (ply == 0) ? 1 : sizes[ply - 1];
+		for (int n = 0; n < parentCount && !outOfTime(); n++) {
+			int root = board.mark();
+			if (ply > 0) replay(board, ply - 1, n);
+
+			Piece current = piece;
+			do {
+				final int yBound = limitHeight - current.getHeight() + 1;
+				final int xBound = board.getWidth() - current.getWidth() + 1;
+
+				for (int x = 0; x < xBound; x++) {
+					int y = board.dropHeight(current, x);
+					if (y < yBound) {    // piece does not stick up too far
+						int result = board.place(current, x, y);
+						if (result <= Board.PLACE_ROW_FILLED) {
+							if (result == Board.PLACE_ROW_FILLED) board.clearRows();
+							addCandidate(n, current, x, y, evaluate(board));
+						}
+						board.undo();
+					}
+				}
+				current = current.fastRotation();
+			} while (current != piece);
+
+			board.rollbackTo(root);
+		}
+
+		// Keep the best width, earlier ones first among equals.
+		int size = 0;
+		for (int c = 0; c < candCount; c++) {
+			if (size == width && candScores[c] >= candScores[best[size - 1]]) continue;
+			int i = (size < width) ? size++ : size - 1;
+			while (i > 0 && candScores[best[i - 1]] > candScores[c]) {
+				best[i] = best[i - 1];
+				i--;
+			}
+			best[i] = c;
+		}
+
+		for (int i = 0; i < size; i++) {
+			int c = best[i];
+			parents[ply][i] = candParents[c];
+			nodePieces[ply][i] = candPieces[c];
+			nodeXs[ply][i] = candXs[c];
+			nodeYs[ply][i] = candYs[c];
+			nodeScores[ply][i] = candScores[c];
+		}
+		sizes[ply] = size;
+	}
+
+
+	private void addCandidate(int parent, Piece piece, int x, int y, double score) {
+		if (candCount == candXs.length) {
+			int length = Math.max(64, 2 * candXs.length);
+			candParents = Arrays.copyOf(candParents, length);
+			candPieces = Arrays.copyOf(candPieces, length);
+			candXs = Arrays.copyOf(candXs, length);
+			candYs = Arrays.copyOf(candYs, length);
+			candScores = Arrays.copyOf(candScores, length);
+		}
+		candParents[candCount] = parent;
+		candPieces[candCount] = piece;
+		candXs[candCount] = x;
+		candYs[candCount] = y;
+		candScores[candCount] = score;
+		candCount++;
+	}
+
+
+	/**
+	 * Plays the placements leading to node n of the given ply onto the
+	 * board, marking after each so the caller can place on top. The
+	 * caller takes a mark first and rolls back to it afterwards.
+	 */
+	private void replay(Board board, int ply, int n) {
+		if (ply > 0) replay(board, ply - 1, parents[ply][n]);
+		if (board.place(nodePieces[ply][n], nodeXs[ply][n], nodeYs[ply][n]) == Board.PLACE_ROW_FILLED) {
+			board.clearRows();
+		}
+		board.mark();
+	}
+
+
+	/**
+	 * Returns the average over the chance pieces of the rating reached
+	 * by playing each one, and then the remaining - 1 after it, to its
+	 * best rated spot. A piece with nowhere to go counts as 1e20.
+	 */
+	private double expected(Board board, int remaining) {
+		double sum = 0;
+		for (Piece piece : chancePieces) {
+			if (outOfTime()) break;
+			Brain.Move move = super.bestMove(board, piece, limitHeight, greedy[remaining]);
+			if (move == null) sum += 1e20;
+			else if (remaining == 1) sum += move.score;
+			else {
+				int root = board.mark();
+				if (board.place(move.piece, move.x, move.y) == Board.PLACE_ROW_FILLED) board.clearRows();
+				board.mark();
+				sum += expected(board, remaining - 1);
+				board.rollbackTo(root);
+			}
+		}
+		return sum / chancePieces.length;
+	}
+
+
+	/**
+	 * Makes bestMove() give up once System.nanoTime() passes
+	 * the given deadline. 0 means no deadline.
+	 */
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+
+
+	/**
+	 * Returns true if the last bestMove() returned null
+	 * because it ran past the deadline.
+	 */
+	public boolean wasAborted() {
+		return aborted;
+	}
+
+
+	/**
+	 * Checks the deadline, remembering if it has passed.
+	 */
+	private boolean outOfTime() {
+		if (!aborted && deadline != 0 && System.nanoTime() - deadline > 0) aborted = true;
+		return aborted;
+	}
+
+
+	/**
+	 * Every rated board is one search node.
+	 */
+	@Override
+	protected double evaluate(Board board) {
+		nodes++;
+		return super.evaluate(board);
+	}
+
+
+	/**
+	 * Returns how many boards have been rated since the last resetStats().
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+
+	/**
+	 * Returns the time spent in bestMove() since the last resetStats().
+	 */
+	public long getNanos() {
+		return nanos;
+	}
+
+
+	/**
+	 * Returns how many boards were rated per second of bestMove().
+	 */
+	public double getNodesPerSecond() {
+		return (nanos == 0) ? 0 : nodes * 1e9 / nanos;
+	}
+
+
+	/**
+	 * Zeroes the node count and time.
+	 */
+	public void resetStats() {
+		nodes = 0;
+		nanos = 0;
+	}
+}
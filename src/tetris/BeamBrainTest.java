@@ -0,0 +1,123 @@
+package tetris;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/*
+  Unit test for tetris.BeamBrain.
+ */
+public class BeamBrainTest {
+	private static final int LIMIT = JTetris.HEIGHT;
+	private static final int WIDE = 1000;    // wider than any ply
+	private Piece[] pieces;
+
+	@Before
+	public void setUp() {
+		pieces = Piece.getPieces();
+	}
+
+	// Boards from the middle of a seeded game
+	private Board position(long seed, int moves) {
+		GameEngine game = new GameEngine(seed);
+		game.setPieceLimit(moves);
+		game.play(new DefaultBrain());
+		return game.getBoard();
+	}
+
+	// One piece deep is just tetris.DefaultBrain.
+	@Test
+	public void testDepthOne() {
+		Board board = position(1, 20);
+		BeamBrain brain = new BeamBrain(1, 1);
+		DefaultBrain plain = new DefaultBrain();
+		for (Piece piece : pieces) {
+			Brain.Move expected = plain.bestMove(board, piece, LIMIT, null);
+			Brain.Move move = brain.bestMove(board, piece, pieces[0], LIMIT, null);
+			assertSame(expected.piece, move.piece);
+			assertEquals(expected.x, move.x);
+			assertEquals(expected.score, move.score, 0);
+		}
+	}
+
+	// A full width beam over two known pieces tries every pair.
+	@Test
+	public void testKnownPieces() {
+		BeamBrain beam = new BeamBrain(2, WIDE);
+		LookaheadBrain lookahead = new LookaheadBrain(WIDE, Long.MAX_VALUE / 2);
+		for (long seed = 0; seed < 5; seed++) {
+			Board board = position(seed, 15);
+			for (Piece piece : pieces) {
+				Piece next = pieces[(int) seed];
+				Brain.Move expected = lookahead.bestMove(board, piece, next, LIMIT, null);
+				Brain.Move move = beam.bestMove(board, piece, next, LIMIT, null);
+				assertEquals(expected.score, move.score, 1e-9);
+			}
+		}
+	}
+
+	// Unknown pieces are averaged over the set.
+	@Test
+	public void testExpectedValue() {
+		Board board = position(2, 12);
+		Piece piece = pieces[3];
+		DefaultBrain plain = new DefaultBrain();
+
+		// Every placement, then the mean of each piece's best reply.
+		double expected = Double.POSITIVE_INFINITY;
+		Piece current = piece;
+		do {
+			for (int x = 0; x + current.getWidth() <= board.getWidth(); x++) {
+				int y = board.dropHeight(current, x);
+				if (y >= LIMIT - current.getHeight() + 1) continue;
+				Board copy = board.copy();
+				if (copy.place(current, x, y) == Board.PLACE_ROW_FILLED) copy.clearRows();
+				copy.commit();
+
+				double sum = 0;
+				for (Piece next : pieces) {
+					Brain.Move reply = plain.bestMove(copy, next, LIMIT, null);
+					sum += (reply != null) ? reply.score : 1e20;
+				}
+				expected = Math.min(expected, sum / pieces.length);
+			}
+			current = current.fastRotation();
+		} while (current != piece);
+
+		Brain.Move move = new BeamBrain(2, WIDE).bestMove(board, piece, LIMIT, null);
+		assertEquals(expected, move.score, 1e-9);
+	}
+
+	// The board is left as it was, and the nodes get counted.
+	@Test
+	public void testBoardUntouched() {
+		Board board = position(4, 25);
+		String before = board.toString();
+		long hash = board.getHash();
+
+		BeamBrain brain = new BeamBrain(3, 3);
+		assertNotNull(brain.bestMove(board, pieces[0], pieces[1], LIMIT, null));
+		assertNotNull(brain.bestMove(board, pieces[2], LIMIT, null));
+
+		assertEquals(before, board.toString());
+		assertEquals(hash, board.getHash());
+		board.sanityCheck();
+		assertTrue(brain.getNodes() > 0);
+		assertTrue(brain.getNodesPerSecond() > 0);
+
+		brain.resetStats();
+		assertEquals(0, brain.getNodes());
+	}
+
+	// Nowhere to go at all
+	@Test
+	public void testNoMove() {
+		Board board = new Board(3, 6);
+		assertNull(new BeamBrain(2, 2).bestMove(board, pieces[0], 2, null));
+	}
+}
@@ -0,0 +1,292 @@
+package tetris;// tetris.Benchmarks.java
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Micro benchmarks for the hot paths of tetris.Board, tetris.Piece
+ * and tetris.DefaultBrain, run on both board engines and on an empty,
+ * a half-full and a near-death board. Meant to be run before and after
+ * changing any of those classes:
+ * <pre>
+ * java tetris.Benchmarks [filter]
+ * </pre>
+ * Only benchmarks whose name contains filter are run.
+ * <p>
+ * Each benchmark is warmed up first, then timed over several
+ * iterations, and reported as the mean and spread of ns/op. Results
+ * are folded into a volatile sink so the JIT can't throw the work away.
+ */
+public class Benchmarks {
+	private static final int WARMUP_ITERATIONS = 5;
+	private static final int ITERATIONS = 10;
+	private static final long ITERATION_NANOS = 200_000_000L;
+
+	// Keeps results alive so the JIT can't drop the measured code.
+	private static volatile long sink;
+
+
+	/**
+	 * One benchmark: does the operation the given number of
+	 * times and returns something derived from the results.
+	 */
+	interface Op {
+		long run(int times);
+	}
+
+
+	/**
+	 * Runs every benchmark whose name contains args[0] (or all of them).
+	 */
+	public static void main(String[] args) {
+		String filter = (args.length > 0) ? args[0] : "";
+
+		System.out.println(String.format("%-48s %12s %10s", "benchmark", "ns/op", "+-"));
+		for (Engine engine : Engine.values()) {
+			for (Fixture fixture : Fixture.values()) {
+				Board board = fixture.build(engine.create());
+				String suffix = "[" + engine.name().toLowerCase() + "," + fixture.name().toLowerCase() + "]";
+
+				run("Board.place+undo" + suffix, filter, placeUndo(board, false));
+				run("Board.place+clearRows+undo" + suffix, filter, placeUndo(board, true));
+				run("Board.clearRows" + suffix, filter, clearRows(board));
+				run("Board.dropHeight" + suffix, filter, dropHeight(board));
+				run("BoardFeatures.compute" + suffix, filter, features(board));
+				run("DefaultBrain.rateBoard" + suffix, filter, rateBoard(board));
+				run("DefaultBrain.bestMove" + suffix, filter, bestMove(board));
+			}
+		}
+		run("Piece.computeNextRotation", filter, computeNextRotation());
+		run("Piece.equals", filter, pieceEquals());
+	}
+
+
+	/**
+	 * Board engines to compare.
+	 */
+	enum Engine {
+		BOARD, BITBOARD;
+
+		Board create() {
+			int height = JTetris.HEIGHT + JTetris.TOP_SPACE;
+			return (this == BOARD) ? new Board(JTetris.WIDTH, height) : new BitBoard(JTetris.WIDTH, height);
+		}
+	}
+
+
+	/**
+	 * Starting positions: rows filled up to some height, each
+	 * with exactly one hole in a random column.
+	 */
+	enum Fixture {
+		EMPTY(0), HALF_FULL(JTetris.HEIGHT / 2), NEAR_DEATH(JTetris.HEIGHT - 3);
+
+		private final int rows;
+
+		Fixture(int rows) {
+			this.rows = rows;
+		}
+
+		Board build(Board board) {
+			Random random = new Random(rows);
+			Piece dot = new Piece("0 0");
+			for (int y = 0; y < rows; y++) {
+				int hole = random.nextInt(board.getWidth());
+				for (int x = 0; x < board.getWidth(); x++) {
+					if (x != hole) {
+						board.place(dot, x, y);
+						board.commit();
+					}
+				}
+			}
+			return board;
+		}
+	}
+
+
+	/**
+	 * Warms up and times one benchmark, printing the result.
+	 */
+	private static void run(String name, String filter, Op op) {
+		if (!name.contains(filter)) return;
+
+		// Find a batch size that takes about one iteration.
+		int times = 1;
+		long elapsed;
+		do {
+			times *= 2;
+			long start = System.nanoTime();
+			sink += op.run(times);
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < ITERATION_NANOS / 10 && times < (1 << 30));
+		times = (int) Math.max(1, Math.min(Integer.MAX_VALUE, times * (ITERATION_NANOS / Math.max(1, elapsed))));
+
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			sink += op.run(times);
+		}
+
+		double[] nanosPerOp = new double[ITERATIONS];
+		for (int i = 0; i < ITERATIONS; i++) {
+			long start = System.nanoTime();
+			sink += op.run(times);
+			nanosPerOp[i] = ((double) (System.nanoTime() - start)) / times;
+		}
+
+		double mean = 0;
+		for (double value : nanosPerOp) mean += value;
+		mean /= ITERATIONS;
+		double variance = 0;
+		for (double value : nanosPerOp) variance += (value - mean) * (value - mean);
+		double deviation = Math.sqrt(variance / (ITERATIONS - 1));
+
+		System.out.println(String.format("%-48s %12.1f %10.1f", name, mean, deviation));
+	}
+
+
+	/**
+	 * Every placement a brain would try on the board, as
+	 * parallel lists of rotations and x values.
+	 */
+	private static void candidates(Board board, List<Piece> pieces, List<Integer> xs) {
+		for (Piece root : Piece.getPieces()) {
+			Piece piece = root;
+			do {
+				for (int x = 0; x + piece.getWidth() <= board.getWidth(); x++) {
+					pieces.add(piece);
+					xs.add(x);
+				}
+				piece = piece.fastRotation();
+			} while (piece != root);
+		}
+	}
+
+
+	private static Op placeUndo(Board board, boolean clear) {
+		List<Piece> pieceList = new ArrayList<>();
+		List<Integer> xList = new ArrayList<>();
+		candidates(board, pieceList, xList);
+		final Piece[] pieces = pieceList.toArray(new Piece[0]);
+		final int[] xs = xList.stream().mapToInt(Integer::intValue).toArray();
+
+		return times -> {
+			long result = 0;
+			for (int i = 0; i < times; i++) {
+				int c = i % pieces.length;
+				result += board.place(pieces[c], xs[c], board.dropHeight(pieces[c], xs[c]));
+				if (clear) result += board.clearRows();
+				board.undo();
+			}
+			return result;
+		};
+	}
+
+
+	private static Op clearRows(Board board) {
+		// One piece made of the empty cells of the bottom row -- the one
+		// hole, or the whole row on an empty board -- so there is always
+		// exactly one row to clear, and it is backed out each time.
+		List<TPoint> holes = new ArrayList<>();
+		for (int x = 0; x < board.getWidth(); x++) {
+			if (!board.getGrid(x, 0)) holes.add(new TPoint(x, 0));
+		}
+		final int x = holes.get(0).x;
+		for (TPoint point : holes) point.x -= x;
+		final Piece fill = new Piece(holes.toArray(new TPoint[0]));
+
+		return times -> {
+			long result = 0;
+			for (int i = 0; i < times; i++) {
+				board.place(fill, x, 0);
+				result += board.clearRows();
+				board.undo();
+			}
+			// Otherwise this only times the no-full-rows shortcut
+			if (result != times) {
+				throw new RuntimeException("Board.clearRows cleared " + result + " rows in " + times + " ops");
+			}
+			return result;
+		};
+	}
+
+
+	private static Op dropHeight(Board board) {
+		final Piece[] pieces = Piece.getPieces();
+		return times -> {
+			long result = 0;
+			for (int i = 0; i < times; i++) {
+				Piece piece = pieces[i % pieces.length];
+				result += board.dropHeight(piece, i % (board.getWidth() - piece.getWidth() + 1));
+			}
+			return result;
+		};
+	}
+
+
+	private static Op features(Board board) {
+		final BoardFeatures features = new BoardFeatures();
+		return times -> {
+			long result = 0;
+			for (int i = 0; i < times; i++) {
+				features.compute(board);
+				result += features.get(BoardFeatures.HOLES);
+			}
+			return result;
+		};
+	}
+
+
+	private static Op rateBoard(Board board) {
+		final DefaultBrain brain = new DefaultBrain();
+		return times -> {
+			double result = 0;
+			for (int i = 0; i < times; i++) {
+				result += brain.rateBoard(board);
+			}
+			return (long) result;
+		};
+	}
+
+
+	private static Op bestMove(Board board) {
+		final DefaultBrain brain = new DefaultBrain();
+		final Piece[] pieces = Piece.getPieces();
+		final Brain.Move move = new Brain.Move();
+		return times -> {
+			long result = 0;
+			for (int i = 0; i < times; i++) {
+				Brain.Move best = brain.bestMove(board, pieces[i % pieces.length], JTetris.HEIGHT, move);
+				if (best != null) result += best.x;
+			}
+			return result;
+		};
+	}
+
+
+	private static Op computeNextRotation() {
+		final Piece[] pieces = Piece.getPieces();
+		return times -> {
+			long result = 0;
+			for (int i = 0; i < times; i++) {
+				result += pieces[i % pieces.length].computeNextRotation().getWidth();
+			}
+			return result;
+		};
+	}
+
+
+	private static Op pieceEquals() {
+		final Piece[] pieces = Piece.getPieces();
+		final Piece[] others = new Piece[pieces.length];
+		for (int i = 0; i < pieces.length; i++) {
+			others[i] = pieces[i].fastRotation().computeNextRotation();
+		}
+		return times -> {
+			long result = 0;
+			for (int i = 0; i < times; i++) {
+				if (pieces[i % pieces.length].equals(others[(i / pieces.length) % others.length])) result++;
+			}
+			return result;
+		};
+	}
+}
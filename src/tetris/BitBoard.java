@@ -0,0 +1,354 @@
+package tetris;// tetris.BitBoard.java
+
+import java.util.Arrays;
+
+/**
+ * A tetris.Board that stores every row as a single long bitmask,
+ * bit x of rows[y] being the block at (x, y). Because of that
+ * it only supports boards up to 64 blocks wide.
+ * <p>
+ * Full rows are detected with one compare against the full-row mask,
+ * row widths are a bit count and column heights are found with
+ * bit scans, so none of the row operations walk single cells.
+ * Has the same contract as tetris.Board, undo() included, and can
+ * be used anywhere a tetris.Board is expected. Undo goes through the
+ * tetris.Board journal, with whole rows as the unit of change. None of
+ * the cell-by-cell storage of tetris.Board is allocated, so a copy()
+ * costs the rows, the heights and a journal sized for them.
+ */
+public class BitBoard extends Board {
+	public static final int MAX_WIDTH = 64;
+
+	private final long fullRow;
+	private long[] rows;
+	private int[] heights;
+	private int maxHeight;
+
+
+	/**
+	 * Creates an empty board of the given width and height
+	 * measured in blocks. The width may not be bigger than MAX_WIDTH.
+	 */
+	public BitBoard(int width, int height) {
+		// Only the rows, heights and maxHeight go on the journal: the
+		// worst case of one place() plus one clearRows() changes
+		// every one of them twice.
+		super(width, height, 2 * (height + width + 1));
+		if (width > MAX_WIDTH) throw new RuntimeException("BitBoard is at most " + MAX_WIDTH + " blocks wide");
+
+		// -1L >>> 64 is still -1L, so handle the full width separately.
+		fullRow = (width == MAX_WIDTH) ? -1L : (1L << width) - 1;
+
+		rows = new long[height];
+		heights = new int[width];
+	}
+
+
+	/**
+	 * Calls main constructor with default values.
+	 */
+	public BitBoard() {
+		this(10, 20);
+	}
+
+
+	/**
+	 * Returns a new board with the same blocks as this one,
+	 * committed, with nothing to undo.
+	 */
+	@Override
+	public BitBoard copy() {
+		BitBoard copy = new BitBoard(width, height);
+		System.arraycopy(rows, 0, copy.rows, 0, height);
+		System.arraycopy(heights, 0, copy.heights, 0, width);
+		copy.maxHeight = maxHeight;
+		copy.hash = hash;
+		return copy;
+	}
+
+
+	/**
+	 * Returns the max column height present in the board.
+	 * For an empty board this is 0.
+	 */
+	@Override
+	public int getMaxHeight() {
+		return maxHeight;
+	}
+
+
+	/**
+	 * Computes max height from the column heights.
+	 */
+	@Override
+	public void setMaxHeight() {
+		maxHeight = 0;
+		for (int h : heights) {
+			if (h > maxHeight) maxHeight = h;
+		}
+	}
+
+
+	/**
+	 * Checks the board for internal consistency -- used
+	 * for debugging. Only called automatically in DEBUG mode.
+	 */
+	@Override
+	public void sanityCheck() {
+		// Recalculate heights the slow way, cell by cell.
+		int[] heightsDebug = new int[width];
+		int maxHeightDebug = 0;
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				if (getGrid(x, y)) heightsDebug[x] = y + 1;
+			}
+			if (heightsDebug[x] > maxHeightDebug) maxHeightDebug = heightsDebug[x];
+		}
+
+		if (!Arrays.equals(heights, heightsDebug)) {
+			throw new RuntimeException("Incorrect heights array");
+		}
+		if (maxHeight != maxHeightDebug) {
+			throw new RuntimeException("Incorrect max height");
+		}
+
+		checkHash();
+	}
+
+
+	/**
+	 * Returns the height of the given column --
+	 * i.e. the y value of the highest block + 1.
+	 * The height is 0 if the column contains no blocks.
+	 */
+	@Override
+	public int getColumnHeight(int x) {
+		return heights[x];
+	}
+
+
+	/**
+	 * Returns the number of filled blocks in
+	 * the given row.
+	 */
+	@Override
+	public int getRowWidth(int y) {
+		return Long.bitCount(rows[y]);
+	}
+
+
+	/**
+	 * Returns row y as a bitmask, bit x set if (x, y) is filled.
+	 */
+	@Override
+	public long getRowMask(int y) {
+		return rows[y];
+	}
+
+
+	/**
+	 * Copies the masks of rows fromY .. fromY + count - 1
+	 * into dest, starting at dest[offset].
+	 */
+	@Override
+	public void copyRows(int fromY, int count, long[] dest, int offset) {
+		System.arraycopy(rows, fromY, dest, offset, count);
+	}
+
+
+	/**
+	 * Returns true if the given block is filled in the board.
+	 * Blocks outside of the valid width/height area
+	 * always return true.
+	 */
+	@Override
+	public boolean getGrid(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height) return true;
+		return (rows[y] & (1L << x)) != 0;
+	}
+
+
+	/**
+	 * Clears the whole grid.
+	 */
+	@Override
+	public void clear() {
+		if (!committed) throw new RuntimeException("clear commit problem");
+		Arrays.fill(rows, 0L);
+		Arrays.fill(heights, 0);
+		maxHeight = 0;
+		hash = 0;
+		markDirty(0, width - 1, 0, height - 1);
+	}
+
+
+	/**
+	 * Attempts to add the body of a piece to the board.
+	 * Same return codes and error cases as tetris.Board.place().
+	 */
+	@Override
+	public int place(Piece piece, int x, int y) {
+		// flag !committed problem
+		if (!committed) throw new RuntimeException("place commit problem");
+		committed = false;
+
+		// The piece's rows are bitmasks too, so it goes in a whole row
+		// at a time. All the checks come first, which leaves the board
+		// untouched when the placement fails.
+		long[] masks = piece.getRowMasks();
+		boolean fits = x >= 0 && y >= 0 && x + piece.getWidth() <= width && y + masks.length <= height;
+		for (int i = 0; fits && i < masks.length; i++) {
+			if ((rows[y + i] & (masks[i] << x)) != 0) fits = false;
+		}
+		if (!fits) return placeError(piece, x, y);
+
+		int result = PLACE_OK;
+		for (int i = 0; i < masks.length; i++) {
+			changeRow(y + i, rows[y + i] | (masks[i] << x));
+			if (rows[y + i] == fullRow) result = PLACE_ROW_FILLED;
+		}
+
+		// The top profile gives the new column heights.
+		int[] profile = piece.getProfile();
+		for (int i = 0; i < profile.length; i++) {
+			if (profile[i] > 0 && y + profile[i] > heights[x + i]) changeHeight(x + i, y + profile[i]);
+		}
+		if (y + masks.length > maxHeight) changeMaxHeight(y + masks.length);
+
+		if (DEBUG) sanityCheck();
+		return result;
+	}
+
+
+	/**
+	 * Works out why a piece does not fit the way tetris.Board.place()
+	 * does, block by block in body order, so a piece both out of
+	 * bounds and on top of a block gets the same code from both.
+	 */
+	private int placeError(Piece piece, int x, int y) {
+		int[] xs = piece.getXs();
+		int[] ys = piece.getYs();
+		for (int i = 0; i < xs.length; i++) {
+			int destX = x + xs[i];
+			int destY = y + ys[i];
+			if (destX < 0 || destY < 0 || destX >= width || destY >= height) return PLACE_OUT_BOUNDS;
+			if ((rows[destY] & (1L << destX)) != 0) return PLACE_BAD;
+		}
+		throw new RuntimeException("placeError() on a piece that fits");
+	}
+
+
+	/*
+	 Journaled setters, see tetris.Board.record().
+	 Keys: rows are y, then come the column heights and maxHeight.
+	*/
+
+	private void changeRow(int y, long value) {
+		if (rows[y] == value) return;
+		record(y, rows[y]);
+		hashRow(y, rows[y] ^ value);
+		rows[y] = value;
+	}
+
+	private void changeHeight(int x, int value) {
+		if (heights[x] == value) return;
+		record(height + x, heights[x]);
+		heights[x] = value;
+	}
+
+	private void changeMaxHeight(int value) {
+		if (maxHeight == value) return;
+		record(height + width, maxHeight);
+		maxHeight = value;
+	}
+
+
+	/**
+	 * Writes a value saved by record() back into the board.
+	 */
+	@Override
+	protected void restore(int key, long old) {
+		if (key < height) {
+			hashRow(key, rows[key] ^ old);
+			rows[key] = old;
+		} else if (key < height + width) heights[key - height] = (int) old;
+		else maxHeight = (int) old;
+	}
+
+
+	/**
+	 * Flips the Zobrist keys of the given cells of row y into the
+	 * hash, and adds them to the dirty region.
+	 */
+	private void hashRow(int y, long flipped) {
+		if (flipped == 0) return;
+		markDirty(Long.numberOfTrailingZeros(flipped), 63 - Long.numberOfLeadingZeros(flipped), y, y);
+		while (flipped != 0) {
+			hash ^= zobrist[Long.numberOfTrailingZeros(flipped) * height + y];
+			flipped &= flipped - 1;
+		}
+	}
+
+
+	/**
+	 * Deletes rows that are filled all the way across, moving
+	 * things above down. Returns the number of rows cleared.
+	 */
+	@Override
+	public int clearRows() {
+		committed = false;
+
+		// Find the first full row, if any.
+		int top = maxHeight;
+		int to = 0;
+		while (to < top && rows[to] != fullRow) to++;
+		if (to == top) return 0;
+
+		// Slide every row that isn't full down over the full ones.
+		for (int from = to; from < top; from++) {
+			if (rows[from] != fullRow) changeRow(to++, rows[from]);
+		}
+
+		int rowsCleared = top - to;
+		for (int y = to; y < top; y++) {
+			changeRow(y, 0L);
+		}
+		computeHeights(to);
+
+		if (DEBUG) sanityCheck();
+		return rowsCleared;
+	}
+
+
+	/**
+	 * Recomputes column heights and maxHeight, knowing that every row
+	 * from top upwards is empty. Walks down from the top keeping a mask
+	 * of the columns whose height is still unknown, and stops as soon
+	 * as every column has been seen.
+	 */
+	private void computeHeights(int top) {
+		int newMaxHeight = 0;
+
+		long unknown = fullRow;
+		for (int y = top - 1; y >= 0 && unknown != 0; y--) {
+			long found = rows[y] & unknown;
+			if (found == 0) continue;
+
+			if (newMaxHeight == 0) newMaxHeight = y + 1;
+			unknown &= ~found;
+
+			// One bit scan per newly found column.
+			while (found != 0) {
+				changeHeight(Long.numberOfTrailingZeros(found), y + 1);
+				found &= found - 1;
+			}
+		}
+
+		// Whatever is left has no blocks at all.
+		while (unknown != 0) {
+			changeHeight(Long.numberOfTrailingZeros(unknown), 0);
+			unknown &= unknown - 1;
+		}
+		changeMaxHeight(newMaxHeight);
+	}
+}
@@ -0,0 +1,63 @@
+package tetris;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/*
+  Runs every tetris.BoardTest case against a tetris.BitBoard,
+  plus a few checks specific to the bitmask rows.
+ */
+public class BitBoardTest extends BoardTest {
+
+	// Same 3X6 board with a pyramid at the bottom as BoardTest,
+	// only backed by row bitmasks.
+	@Before
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		b = new BitBoard(3, 6);
+		b.place(new Piece(Piece.PYRAMID_STR), 0, 0);
+	}
+
+	// Fill the widest possible board and clear it in one go
+	@Test
+	public void testFullWidth() {
+		Board wide = new BitBoard(BitBoard.MAX_WIDTH, 8);
+		Piece square = new Piece(Piece.SQUARE_STR);
+		for (int x = 0; x < BitBoard.MAX_WIDTH; x += 2) {
+			wide.commit();
+			int result = wide.place(square, x, 0);
+			assertEquals(x == BitBoard.MAX_WIDTH - 2 ? Board.PLACE_ROW_FILLED : Board.PLACE_OK, result);
+		}
+		assertEquals(BitBoard.MAX_WIDTH, wide.getRowWidth(0));
+		assertEquals(2, wide.getMaxHeight());
+		assertEquals(2, wide.clearRows());
+		assertEquals(0, wide.getMaxHeight());
+		assertEquals(0, wide.getColumnHeight(BitBoard.MAX_WIDTH - 1));
+	}
+
+	// Heights must come back down to the blocks left under a cleared row
+	@Test
+	public void testHeightsAfterClear() {
+		b.commit();
+		b.place(new Piece(Piece.STICK_STR), 0, 1);
+		b.commit();
+		b.place(new Piece(Piece.STICK_STR), 2, 1);
+		assertEquals(2, b.clearRows());
+		assertEquals(3, b.getColumnHeight(0));
+		assertEquals(0, b.getColumnHeight(1));
+		assertEquals(3, b.getColumnHeight(2));
+		assertEquals(3, b.getMaxHeight());
+		b.undo();
+		assertEquals(5, b.getColumnHeight(0));
+		assertEquals(2, b.getColumnHeight(1));
+		assertEquals(5, b.getMaxHeight());
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testTooWide() {
+		new BitBoard(BitBoard.MAX_WIDTH + 1, 4);
+	}
+}
@@ -1,16 +1,28 @@
 package tetris;// tetris.Board.java
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * CS108 Tetris tetris.Board.
  * Represents a Tetris board -- essentially a 2-d grid
  * of booleans. Supports tetris pieces and row clearing.
  * Has an "undo" feature that allows clients to add and remove pieces efficiently.
+ * Every change made by place() and clearRows() is written to a journal
+ * as a (key, old value) pair, so undo() only has to put back what
+ * actually changed instead of copying the whole board.
+ * For deeper searches, mark() and rollbackTo() keep any number of
+ * levels on the same journal without copying the board.
+ * <p>
+ * The board also keeps a Zobrist hash of its blocks -- the XOR of
+ * a fixed random key per filled cell -- updated with every cell
+ * change, so boards with the same blocks have the same getHash().
  * Does not do any drawing or have any idea of pixels. Instead,
  * just represents the abstract 2-d board.
+ * <p>
+ * Row widths, column heights and the max height are kept up to date
+ * incrementally by place() and clearRows(). Run with -Dtetris.debug=true
+ * to have every change checked against a full recompute by sanityCheck().
  */
 public class Board {
 	public static final int PLACE_OK = 0;
@@ -19,23 +31,40 @@ public class Board {
 	public static final int PLACE_BAD = 3;
 	private static final int DEFAULT_WIDTH = 10;
 	private static final int DEFAULT_HEIGHT = 20;
-	private boolean committed;
+	protected boolean committed;
 
 
 	// Here a few trivial methods are provided:
 	// Some ivars are stubbed out for you:
-	private int width;
-	private int height;
+	protected int width;
+	protected int height;
 	private int maxHeight;
 	private int[] widths;
 	private int[] heights;
 	private boolean[][] grid;
-	private boolean DEBUG = true;
+	protected static final boolean DEBUG = Boolean.getBoolean("tetris.debug");
 
-	private int maxHeightBackup;
-	private int[] widthsBackup;
-	private int[] heightsBackup;
-	private boolean[][] gridBackup;
+	// Undo journal of (key, old value) pairs, oldest first.
+	private long[] journal;
+	private int journalSize;
+	private int undoStart;    // where the changes undo() backs out begin
+
+	// Journal sizes saved by mark(), one per level.
+	private int[] marks;
+	private int markCount;
+
+	// Zobrist keys, one per cell (indexed x * height + y), shared by
+	// all boards of the same size, and the XOR of the keys of all filled cells.
+	private static final ConcurrentHashMap<Long, long[]> ZOBRIST_TABLES = new ConcurrentHashMap<>();
+	protected final long[] zobrist;
+	protected long hash;
+
+	// Bounding box of the cells changed since the last takeDirty(),
+	// empty while dirtyMaxX < 0. Lets a renderer repaint only that.
+	private int dirtyMinX = Integer.MAX_VALUE;
+	private int dirtyMaxX = -1;
+	private int dirtyMinY = Integer.MAX_VALUE;
+	private int dirtyMaxY = -1;
 
 
 	/**
@@ -43,26 +72,60 @@ public class Board {
 	 * measured in blocks.
 	 */
 	public Board(int width, int height) {
-		committed = true;
+		// Undo journal, big enough for the worst case of one place()
+		// plus one clearRows() (every cell, width and height changing)
+		// so the game loop never has to grow it.
+		this(width, height, width * height + height + width + 1);
 
-		// ivars
-		this.width = width;
-		this.height = height;
 		this.grid = new boolean[width][height];
 		this.widths = new int[height];
 		this.heights = new int[width];
 
-		// Backups
-		this.widthsBackup = new int[height];
-		this.heightsBackup = new int[width];
-		this.gridBackup = new boolean[width][height];
-
 		// Pre-compute widths and heights.
 		setWidths(widths);
 		setHeights(heights);
 	}
 
 
+	/**
+	 * Sets up only what every engine shares -- the size, the undo
+	 * journal with room for the given number of changes, the marks and
+	 * the Zobrist keys -- but none of the block storage. For subclasses
+	 * that keep the blocks their own way, and override every method
+	 * that reads them.
+	 */
+	protected Board(int width, int height, int journalEntries) {
+		committed = true;
+
+		// ivars
+		this.width = width;
+		this.height = height;
+		this.journal = new long[2 * journalEntries];
+		this.marks = new int[8];
+
+		this.zobrist = zobristTable(width, height);
+	}
+
+
+	/**
+	 * Returns the Zobrist keys of every cell of a board of the given size,
+	 * indexed x * height + y. Made once per size and shared by every board
+	 * of that size and their copies, which is what makes the hashes of two
+	 * boards comparable. Never to be changed.
+	 */
+	private static long[] zobristTable(int width, int height) {
+		return ZOBRIST_TABLES.computeIfAbsent(((long) width << 32) | height, size -> {
+			long[] table = new long[width * height];
+			for (int x = 0; x < width; x++) {
+				for (int y = 0; y < height; y++) {
+					table[x * height + y] = zobristKey(x, y);
+				}
+			}
+			return table;
+		});
+	}
+
+
 	/**
 	 * Calls main constructor with default values.
 	 */
@@ -71,6 +134,49 @@ public class Board {
 	}
 
 
+	/**
+	 * Returns a new board with the same blocks as this one,
+	 * in the committed state with nothing to undo. Lets several
+	 * threads work on the same position without sharing a board.
+	 */
+	public Board copy() {
+		Board copy = new Board(width, height);
+		for (int x = 0; x < width; x++) {
+			System.arraycopy(grid[x], 0, copy.grid[x], 0, height);
+		}
+		System.arraycopy(widths, 0, copy.widths, 0, height);
+		System.arraycopy(heights, 0, copy.heights, 0, width);
+		copy.maxHeight = maxHeight;
+		copy.hash = hash;
+		return copy;
+	}
+
+
+	/**
+	 * Returns the Zobrist key of the cell at x, y. Keys only depend
+	 * on the position, never on the board size or engine, so any two
+	 * boards with the same blocks end up with the same hash.
+	 * (splitmix64 of the packed coordinates)
+	 */
+	public static long zobristKey(int x, int y) {
+		long z = (((long) y << 32) | (x & 0xffffffffL)) * 0x9E3779B97F4A7C15L + 0x632BE59BD9B4E019L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+
+	/**
+	 * Returns the Zobrist hash of the blocks on the board.
+	 * Kept up to date by place(), clearRows(), undo() and rollbackTo(),
+	 * so it costs nothing to read. Meant for transposition tables
+	 * like tetris.EvaluationCache.
+	 */
+	public long getHash() {
+		return hash;
+	}
+
+
 	/**
 	 * Computes heights of each column.
 	 */
@@ -134,25 +240,49 @@ public class Board {
 
 	/**
 	 * Checks the board for internal consistency -- used
-	 * for debugging.
+	 * for debugging. Recomputes everything from the grid,
+	 * so it is only called automatically in DEBUG mode.
 	 */
 	public void sanityCheck() {
-		if (DEBUG) {
-			// Recalculate widths array and check the
-			// correctness of the main one.
-			int[] widthsDebug = new int[height];
-			setWidths(widthsDebug);
-			if (!Arrays.equals(widths, widthsDebug)) {
-				throw new RuntimeException("Incorrect widths array");
-			}
+		// Recalculate widths array and check the
+		// correctness of the main one.
+		int[] widthsDebug = new int[height];
+		setWidths(widthsDebug);
+		if (!Arrays.equals(widths, widthsDebug)) {
+			throw new RuntimeException("Incorrect widths array");
+		}
+
+		// Same thing here.
+		int[] heightsDebug = new int[width];
+		setHeights(heightsDebug);
+		if (!Arrays.equals(heights, heightsDebug)) {
+			throw new RuntimeException("Incorrect heights array");
+		}
+
+		// And the max of the heights.
+		int maxHeightDebug = Arrays.stream(heightsDebug).max().getAsInt();
+		if (maxHeight != maxHeightDebug) {
+			throw new RuntimeException("Incorrect max height");
+		}
+
+		checkHash();
+	}
+
 
-			// Same thing here.
-			int[] heightsDebug = new int[width];
-			setHeights(heightsDebug);
-			if (!Arrays.equals(heights, heights)) {
-				throw new RuntimeException("Incorrect heights array");
+	/**
+	 * Recomputes the hash from scratch with getGrid()
+	 * and checks it against the incremental one.
+	 */
+	protected void checkHash() {
+		long hashDebug = 0;
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				if (getGrid(x, y)) hashDebug ^= zobrist[x * height + y];
 			}
 		}
+		if (hash != hashDebug) {
+			throw new RuntimeException("Incorrect hash");
+		}
 	}
 
 
@@ -198,13 +328,39 @@ public class Board {
 	}
 
 
+	/**
+	 * Returns row y as a bitmask, bit x set if (x, y)
+	 * is filled. Only for boards up to 64 blocks wide.
+	 * Built from the grid cell by cell -- tetris.BitBoard
+	 * keeps its rows this way and just hands them out.
+	 */
+	public long getRowMask(int y) {
+		if (width > 64) throw new RuntimeException("Row masks need a board at most 64 blocks wide");
+		long mask = 0;
+		for (int x = 0; x < width; x++) {
+			if (grid[x][y]) mask |= 1L << x;
+		}
+		return mask;
+	}
+
+
+	/**
+	 * Copies the masks of rows fromY .. fromY + count - 1 (see
+	 * getRowMask()) into dest, starting at dest[offset], so renderers
+	 * and evaluators can read many cells with one call and no allocation.
+	 */
+	public void copyRows(int fromY, int count, long[] dest, int offset) {
+		for (int i = 0; i < count; i++) dest[offset + i] = getRowMask(fromY + i);
+	}
+
+
 	/**
 	 * Returns true if the given block is filled in the board.
 	 * Blocks outside of the valid width/height area
 	 * always return true.
 	 */
 	public boolean getGrid(int x, int y) {
-		return !inBounds(new TPoint(x, y)) || grid[x][y];
+		return !inBounds(x, y) || grid[x][y];
 	}
 
 	/**
@@ -216,6 +372,9 @@ public class Board {
 			Arrays.fill(row, false);
 		Arrays.fill(widths, 0);
 		Arrays.fill(heights, 0);
+		maxHeight = 0;
+		hash = 0;
+		markDirty(0, width - 1, 0, height - 1);
 	}
 
 	/**
@@ -235,140 +394,210 @@ public class Board {
 	public int place(Piece piece, int x, int y) {
 		// flag !committed problem
 		if (!committed) throw new RuntimeException("place commit problem");
-		backup();
 		committed = false;
 
 		int result = PLACE_OK;
 
-		TPoint dest = new TPoint(0, 0);
-		for (TPoint point : piece.getBody()) {
+		int[] xs = piece.getXs();
+		int[] ys = piece.getYs();
+		for (int i = 0; i < xs.length; i++) {
 			// Calculate destination coordinates.
-			dest.x = x + point.x;
-			dest.y = y + point.y;
+			int destX = x + xs[i];
+			int destY = y + ys[i];
 
 			// Check if the point is in bounds.
-			if (!inBounds(dest)) {
+			if (!inBounds(destX, destY)) {
 				result = PLACE_OUT_BOUNDS;
 				break;
 			}
 
 			// Check if the point is not already filled.
-			if (grid[dest.x][dest.y]) {
+			if (grid[destX][destY]) {
 				result = PLACE_BAD;
 				break;
 			}
 
 			// Do the thing Zhu Li.
-			grid[dest.x][dest.y] = true;
-			widths[dest.y]++;
-			heights[dest.x]++;
+			changeCell(destX, destY, true);
+			changeWidth(destY, widths[destY] + 1);
+			if (destY >= heights[destX]) changeHeight(destX, destY + 1);
+			if (destY >= maxHeight) changeMaxHeight(destY + 1);
 
-			if (widths[dest.y] == width) result = PLACE_ROW_FILLED;
+			if (widths[destY] == width) result = PLACE_ROW_FILLED;
 		}
 
-		resetDimensions();
-		sanityCheck();
+		if (DEBUG) sanityCheck();
 		return result;
 	}
 
-	private void backup() {
-		// Backup the board.
-		for (int i = 0; i < grid.length; i++) {
-			System.arraycopy(grid[i], 0, gridBackup[i], 0, grid[0].length);
-		}
+	/*
+	 Journaled setters.
+	 All changes made by place() and clearRows() go through these,
+	 so the old value is on the journal before it is overwritten.
+	 Keys: cells are x * height + y, then come the row widths,
+	 the column heights and finally maxHeight.
+	*/
+
+	private void changeCell(int x, int y, boolean filled) {
+		if (grid[x][y] == filled) return;
+		record(x * height + y, grid[x][y] ? 1 : 0);
+		grid[x][y] = filled;
+		hash ^= zobrist[x * height + y];
+		markDirty(x, x, y, y);
+	}
 
-		// Backup maxHeight.
-		maxHeightBackup = maxHeight;
+	private void changeWidth(int y, int value) {
+		if (widths[y] == value) return;
+		record(width * height + y, widths[y]);
+		widths[y] = value;
+	}
 
-		// Backup widths and heights arrays.
-		System.arraycopy(widths, 0, widthsBackup, 0, widths.length);
-		System.arraycopy(heights, 0, heightsBackup, 0, heights.length);
+	private void changeHeight(int x, int value) {
+		if (heights[x] == value) return;
+		record(width * height + height + x, heights[x]);
+		heights[x] = value;
+	}
+
+	private void changeMaxHeight(int value) {
+		if (maxHeight == value) return;
+		record(width * height + height + width, maxHeight);
+		maxHeight = value;
 	}
 
 
 	/**
-	 * Takes a point and checks if it's on the grid.
-	 *
-	 * @param point on the board
-	 * @return true if the point is in bounds.
+	 * Pushes the old value of some piece of board state onto
+	 * the undo journal, right before it gets overwritten.
+	 * Subclasses with their own storage pick their own keys
+	 * and override restore() to match.
 	 */
-	private boolean inBounds(TPoint point) {
-		return (point.x < width) && (point.y < height) && (point.x >= 0) && (point.y >= 0);
+	protected void record(int key, long old) {
+		if (journalSize == journal.length) journal = Arrays.copyOf(journal, journal.length * 2);
+		journal[journalSize++] = key;
+		journal[journalSize++] = old;
 	}
 
 
 	/**
-	 * Deletes rows that are filled all the way across, moving
-	 * things above down. Returns the number of rows cleared.
+	 * Writes a value saved by record() back into the board.
 	 */
-	public int clearRows() {
-		if (committed) backup();
-		int rowsCleared = 0;
-
-		int column = 0;
-		int size = width * height;
-
-		boolean[][] result = new boolean[width][height]; // Grid full of 'false' values.
-		List<Boolean> list = new ArrayList<>(); // List to store already read values of current column.
-		for (int i = 0; i <= size; i++) {
-			int x = i % width, y = i / width; // Calculate x and y.
-			if (i != 0 && x == 0) {
-				boolean flag = isAllTrue(list); // Check if every value of this column is true.
-				if (!flag) {
-					for (int j = 0; j < list.size(); j++) { // If the flag is false we need to copy
-						result[j][column] = list.get(j);    // this column to the result grid.
-					}
-					column++; // 'Prepare' column for the next iteration.
-				} else rowsCleared++;
-				list.clear(); // Empty the list.
-			}
-			if (i < size) list.add(grid[x][y]); // Add current value to the list.
+	protected void restore(int key, long old) {
+		int cells = width * height;
+		if (key < cells) {
+			// Cells are only journaled when they flip,
+			// so putting one back always flips it again.
+			grid[key / height][key % height] = (old != 0);
+			hash ^= zobrist[key];
+			markDirty(key / height, key / height, key % height, key % height);
 		}
+		else if (key < cells + height) widths[key - cells] = (int) old;
+		else if (key < cells + height + width) heights[key - cells - height] = (int) old;
+		else maxHeight = (int) old;
+	}
 
-		// Save the result and board state.
-		committed = false;
-		grid = result;
 
-		// Recompute and check stuff.
-		resetDimensions();
-		sanityCheck();
+	/**
+	 * Adds the given block range to the dirty region.
+	 * Subclasses call this for every block they change.
+	 */
+	protected void markDirty(int minX, int maxX, int minY, int maxY) {
+		if (minX < dirtyMinX) dirtyMinX = minX;
+		if (maxX > dirtyMaxX) dirtyMaxX = maxX;
+		if (minY < dirtyMinY) dirtyMinY = minY;
+		if (maxY > dirtyMaxY) dirtyMaxY = maxY;
+	}
 
-		return rowsCleared;
+
+	/**
+	 * Gets the bounding box of every block that changed since the
+	 * last call -- placed, cleared, moved or undone -- as
+	 * {minX, minY, maxX, maxY} in region, and starts over.
+	 * Returns false, leaving region alone, if nothing changed.
+	 */
+	public boolean takeDirty(int[] region) {
+		if (dirtyMaxX < 0) return false;
+		region[0] = dirtyMinX;
+		region[1] = dirtyMinY;
+		region[2] = dirtyMaxX;
+		region[3] = dirtyMaxY;
+
+		dirtyMinX = Integer.MAX_VALUE;
+		dirtyMaxX = -1;
+		dirtyMinY = Integer.MAX_VALUE;
+		dirtyMaxY = -1;
+		return true;
 	}
 
 
 	/**
-	 * Nullifies current widths and heights
-	 * arrays and recomputes its values.
+	 * Pops the journal back down to the given size,
+	 * restoring entries newest first.
 	 */
-	private void resetDimensions() {
-		// Fill arrays with zeroes.
-		Arrays.fill(widths, 0);
-		Arrays.fill(heights, 0);
+	private void rollback(int size) {
+		while (journalSize > size) {
+			journalSize -= 2;
+			restore((int) journal[journalSize], journal[journalSize + 1]);
+		}
+	}
 
-		// Recompute widths and heights.
-		setWidths(widths);
-		setHeights(heights);
-		setMaxHeight();
+
+	/**
+	 * Checks if x, y is on the grid. Takes plain ints so
+	 * the read path never allocates a point to ask.
+	 */
+	private boolean inBounds(int x, int y) {
+		return (x < width) && (y < height) && (x >= 0) && (y >= 0);
 	}
 
 
 	/**
-	 * Takes a list and checks if every values is true.
-	 *
-	 * @param list of booleans
-	 * @return true if everything's true
-	 */
-	private boolean isAllTrue(List<Boolean> list) {
-		boolean flag = false;
-		for (boolean bool : list) {
-			if (!bool) {
-				flag = false;
-				break;
+	 * Deletes rows that are filled all the way across, moving
+	 * things above down. Returns the number of rows cleared.
+	 * Rows are compacted in place, so only rows from the first
+	 * full one up to maxHeight are touched, and nothing is allocated.
+	 */
+	public int clearRows() {
+		committed = false;
+
+		// Find the first full row -- usually there is none
+		// and we can stop right here.
+		int top = maxHeight;
+		int to = 0;
+		while (to < top && widths[to] != width) to++;
+		if (to == top) return 0;
+
+		for (int from = to; from < top; from++) {
+			if (widths[from] == width) continue;
+			// Slide this row down over the full rows below it.
+			for (int x = 0; x < width; x++) {
+				changeCell(x, to, grid[x][from]);
+			}
+			changeWidth(to, widths[from]);
+			to++;
+		}
+
+		// Everything from 'to' upwards is empty now.
+		int rowsCleared = top - to;
+		for (int y = to; y < top; y++) {
+			for (int x = 0; x < width; x++) {
+				changeCell(x, y, false);
 			}
-			flag = true;
+			changeWidth(y, 0);
+		}
+
+		// A column can only have got shorter, so its new
+		// height is found by walking down from the old one.
+		int newMaxHeight = 0;
+		for (int x = 0; x < width; x++) {
+			int h = Math.min(heights[x], to);
+			while (h > 0 && !grid[x][h - 1]) h--;
+			changeHeight(x, h);
+			if (h > newMaxHeight) newMaxHeight = h;
 		}
-		return flag;
+		changeMaxHeight(newMaxHeight);
+
+		if (DEBUG) sanityCheck();
+		return rowsCleared;
 	}
 
 
@@ -380,30 +609,55 @@ public class Board {
 	 * See the overview docs.
 	 */
 	public void undo() {
-		// Restore maxHeight.
-		maxHeight = maxHeightBackup;
-
-
-		// Restore grid.
-		for (int i = 0; i < grid.length; i++) {
-			System.arraycopy(gridBackup[i], 0, grid[i], 0, grid[0].length);
-		}
-
-		// Restore widths and heights arrays.
-		System.arraycopy(widthsBackup, 0, widths, 0, widths.length);
-		System.arraycopy(heightsBackup, 0, heights, 0, heights.length);
+		// Put back everything place()/clearRows() changed.
+		rollback(undoStart);
 
 		// Change board state.
 		commit();
-		sanityCheck();
+		if (DEBUG) sanityCheck();
 	}
 
 
 	/**
 	 * Puts the board in the committed state.
+	 * The journal is only thrown away if no mark() is outstanding.
 	 */
 	public void commit() {
 		committed = true;
+		if (markCount == 0) journalSize = 0;
+		undoStart = journalSize;
+	}
+
+
+	/**
+	 * Commits the board like commit(), but remembers the current state
+	 * so rollbackTo() can come back to it later, however many place()
+	 * and clearRows() calls happen in between. Marks nest: a search
+	 * can mark() before every ply and roll back on the way up.
+	 * Returns the mark to pass to rollbackTo().
+	 */
+	public int mark() {
+		committed = true;
+		if (markCount == marks.length) marks = Arrays.copyOf(marks, marks.length * 2);
+		marks[markCount] = journalSize;
+		undoStart = journalSize;
+		return markCount++;
+	}
+
+
+	/**
+	 * Reverts the board to the state it was in when the given
+	 * mark was taken, leaving it committed. That mark and every
+	 * mark taken after it are released.
+	 */
+	public void rollbackTo(int mark) {
+		if (mark < 0 || mark >= markCount) throw new RuntimeException("rollback to a released mark");
+		rollback(marks[mark]);
+		markCount = mark;
+
+		committed = true;
+		undoStart = journalSize;
+		if (DEBUG) sanityCheck();
 	}
 
 
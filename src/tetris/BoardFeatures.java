@@ -0,0 +1,144 @@
+package tetris;// tetris.BoardFeatures.java
+
+import java.util.Arrays;
+
+/**
+ * The usual features brains rate boards by, all found in one pass
+ * over the row bitmasks of a board (tetris.Board.getRowMask()), from
+ * the top filled row down:
+ * <ul>
+ * <li>MAX_HEIGHT and HEIGHT_SUM of the columns,</li>
+ * <li>HOLES -- empty cells with a filled cell somewhere above,</li>
+ * <li>ROW_TRANSITIONS -- filled/empty changes along each row up to the
+ * max height, the side walls counting as filled,</li>
+ * <li>COLUMN_TRANSITIONS -- filled/empty changes up each column, the
+ * floor counting as filled and the space above the max height as empty,</li>
+ * <li>WELLS -- open (not covered) empty cells whose left and right
+ * neighbours are both filled, walls included, and</li>
+ * <li>BUMPINESS -- the sum of the height differences of neighbouring
+ * columns.</li>
+ * </ul>
+ * Each row is handled as a whole word with shifts, masks and bit counts
+ * (SIMD within a register), so the pass costs a few operations per row
+ * rather than per cell. A tetris.BoardFeatures object is meant to be
+ * reused: compute() overwrites the values, and nothing is allocated
+ * unless the board width changes. Not thread-safe -- keep one per thread.
+ * <pre>
+ * features.compute(board);
+ * double score = features.dot(weights);    // or features.get(tetris.BoardFeatures.HOLES) ...
+ * </pre>
+ */
+public class BoardFeatures {
+	public static final int MAX_HEIGHT = 0;
+	public static final int HEIGHT_SUM = 1;
+	public static final int HOLES = 2;
+	public static final int ROW_TRANSITIONS = 3;
+	public static final int COLUMN_TRANSITIONS = 4;
+	public static final int WELLS = 5;
+	public static final int BUMPINESS = 6;
+	public static final int COUNT = 7;
+
+	private final int[] values = new int[COUNT];
+	private int[] heights = new int[0];
+
+
+	/**
+	 * Computes every feature of the given board, which
+	 * may be at most 64 blocks wide.
+	 */
+	public void compute(Board board) {
+		final int width = board.getWidth();
+		if (width > 64) throw new RuntimeException("Board features need a board at most 64 blocks wide");
+		if (heights.length != width) heights = new int[width];
+		Arrays.fill(heights, 0);    // columns with no blocks stay 0
+
+		final long full = (width == 64) ? -1L : (1L << width) - 1;
+		final long inner = full >>> 1;            // left cell of every pair of neighbours
+		final long rightWall = 1L << (width - 1);
+		final int maxHeight = board.getMaxHeight();
+
+		int holes = 0;
+		int rowTransitions = 0;
+		int columnTransitions = 0;
+		int wells = 0;
+		int heightSum = 0;
+
+		long covered = 0;    // columns with a block above the current row
+		long above = 0;      // the row above the current one
+		for (int y = maxHeight - 1; y >= 0; y--) {
+			long row = board.getRowMask(y);
+
+			holes += Long.bitCount(~row & covered);
+			columnTransitions += Long.bitCount(row ^ above);
+
+			// Changes between neighbours, then the two walls.
+			rowTransitions += Long.bitCount((row ^ (row >>> 1)) & inner);
+			if ((row & 1) == 0) rowTransitions++;
+			if ((row & rightWall) == 0) rowTransitions++;
+
+			// Open cells with filled (or wall) neighbours on both sides.
+			long wellCells = ~row & ~covered & full & ((row << 1) | 1) & ((row >>> 1) | rightWall);
+			wells += Long.bitCount(wellCells);
+
+			// Columns seeing their first block from the top get their height.
+			long top = row & ~covered;
+			while (top != 0) {
+				heights[Long.numberOfTrailingZeros(top)] = y + 1;
+				heightSum += y + 1;
+				top &= top - 1;
+			}
+
+			covered |= row;
+			above = row;
+		}
+		// The floor counts as filled.
+		if (maxHeight > 0) columnTransitions += Long.bitCount(~above & full);
+
+		int bumpiness = 0;
+		for (int x = 0; x + 1 < width; x++) bumpiness += Math.abs(heights[x] - heights[x + 1]);
+
+		values[MAX_HEIGHT] = maxHeight;
+		values[HEIGHT_SUM] = heightSum;
+		values[HOLES] = holes;
+		values[ROW_TRANSITIONS] = rowTransitions;
+		values[COLUMN_TRANSITIONS] = columnTransitions;
+		values[WELLS] = wells;
+		values[BUMPINESS] = bumpiness;
+	}
+
+
+	/**
+	 * Returns the given feature (MAX_HEIGHT, HOLES, ...)
+	 * of the last board computed.
+	 */
+	public int get(int feature) {
+		return values[feature];
+	}
+
+
+	/**
+	 * Returns the height of column x of the last board computed.
+	 */
+	public int getColumnHeight(int x) {
+		return heights[x];
+	}
+
+
+	/**
+	 * Returns the weighted sum of the features, weights[f]
+	 * being the weight of feature f. Missing weights count as 0.
+	 */
+	public double dot(double[] weights) {
+		double sum = 0;
+		for (int f = 0; f < COUNT && f < weights.length; f++) sum += weights[f] * values[f];
+		return sum;
+	}
+
+
+	/**
+	 * Returns the features as a new array, indexed by feature.
+	 */
+	public int[] toArray() {
+		return values.clone();
+	}
+}
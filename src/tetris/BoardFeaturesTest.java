@@ -0,0 +1,130 @@
+package tetris;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/*
+  Unit test for tetris.BoardFeatures.
+ */
+public class BoardFeaturesTest {
+	private final Piece dot = new Piece("0 0");
+
+	private Board fill(Board board, String... rows) {
+		// rows[0] is the top row, '#' for a block
+		for (int i = 0; i < rows.length; i++) {
+			int y = rows.length - 1 - i;
+			for (int x = 0; x < rows[i].length(); x++) {
+				if (rows[i].charAt(x) == '#') {
+					board.place(dot, x, y);
+					board.commit();
+				}
+			}
+		}
+		return board;
+	}
+
+	// The same features the slow way, cell by cell.
+	private int[] naive(Board board) {
+		int width = board.getWidth();
+		int maxHeight = board.getMaxHeight();
+		int[] values = new int[BoardFeatures.COUNT];
+		values[BoardFeatures.MAX_HEIGHT] = maxHeight;
+
+		for (int x = 0; x < width; x++) {
+			int height = board.getColumnHeight(x);
+			values[BoardFeatures.HEIGHT_SUM] += height;
+			if (x + 1 < width) values[BoardFeatures.BUMPINESS] += Math.abs(height - board.getColumnHeight(x + 1));
+
+			for (int y = 0; y < height; y++) {
+				if (!board.getGrid(x, y)) values[BoardFeatures.HOLES]++;
+			}
+			// floor is filled, above maxHeight is empty
+			for (int y = 0; y <= maxHeight && maxHeight > 0; y++) {
+				boolean below = (y == 0) || board.getGrid(x, y - 1);
+				boolean here = (y < maxHeight) && board.getGrid(x, y);
+				if (below != here) values[BoardFeatures.COLUMN_TRANSITIONS]++;
+			}
+			for (int y = height; y < maxHeight; y++) {
+				if (board.getGrid(x - 1, y) && board.getGrid(x + 1, y)) values[BoardFeatures.WELLS]++;
+			}
+		}
+		for (int y = 0; y < maxHeight; y++) {
+			for (int x = 0; x <= width; x++) {
+				// getGrid() is true outside the board, so walls count as filled
+				if (board.getGrid(x - 1, y) != board.getGrid(x, y)) values[BoardFeatures.ROW_TRANSITIONS]++;
+			}
+		}
+		return values;
+	}
+
+	@Test
+	public void testSmall() {
+		Board board = fill(new Board(5, 8),
+				"#....",
+				"#.#..",
+				"##.##");
+		BoardFeatures features = new BoardFeatures();
+		features.compute(board);
+
+		assertEquals(3, features.get(BoardFeatures.MAX_HEIGHT));
+		assertEquals(3 + 1 + 2 + 1 + 1, features.get(BoardFeatures.HEIGHT_SUM));
+		assertEquals(1, features.get(BoardFeatures.HOLES));
+		assertEquals(2 + 4 + 2, features.get(BoardFeatures.ROW_TRANSITIONS));
+		assertEquals(1, features.get(BoardFeatures.WELLS));
+		assertEquals(2 + 1 + 1 + 0, features.get(BoardFeatures.BUMPINESS));
+		assertEquals(3, features.getColumnHeight(0));
+		assertEquals(1, features.getColumnHeight(4));
+		assertArrayEquals(naive(board), features.toArray());
+
+		double[] weights = new double[BoardFeatures.COUNT];
+		weights[BoardFeatures.HOLES] = 2;
+		weights[BoardFeatures.MAX_HEIGHT] = 0.5;
+		assertEquals(3.5, features.dot(weights), 0);
+	}
+
+	@Test
+	public void testEmpty() {
+		BoardFeatures features = new BoardFeatures();
+		features.compute(fill(new Board(5, 8), "#####"));
+		features.compute(new Board(4, 4));
+		assertArrayEquals(new int[BoardFeatures.COUNT], features.toArray());
+		assertEquals(0, features.getColumnHeight(0));
+	}
+
+	// Random junk on both engines and a few widths, 64 included
+	@Test
+	public void testRandom() {
+		Random random = new Random(1);
+		BoardFeatures features = new BoardFeatures();
+		DefaultBrain brain = new DefaultBrain();
+		for (int width : new int[]{3, 10, 63, 64}) {
+			for (int i = 0; i < 20; i++) {
+				Board board = (i % 2 == 0) ? new Board(width, 12) : new BitBoard(width, 12);
+				int top = random.nextInt(12);
+				for (int y = 0; y < top; y++) {
+					for (int x = 0; x < width; x++) {
+						if (random.nextInt(3) != 0) {
+							board.place(dot, x, y);
+							board.commit();
+						}
+					}
+				}
+				board.clearRows();
+				board.commit();
+
+				features.compute(board);
+				int[] expected = naive(board);
+				assertArrayEquals(expected, features.toArray());
+
+				// rateBoard() gives what it always gave
+				double average = ((double) expected[BoardFeatures.HEIGHT_SUM]) / width;
+				assertEquals(8 * board.getMaxHeight() + 40 * average + 1.25 * expected[BoardFeatures.HOLES],
+						brain.rateBoard(board), 0);
+			}
+		}
+	}
+}
@@ -1,9 +1,16 @@
 package tetris;
 
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class BoardTest {
 	Board b;
@@ -230,4 +237,232 @@ public class BoardTest {
 		}
 	}
 
-}
\ No newline at end of file
+	// Bookkeeping kept up by place()/clearRows()/undo() must always
+	// match a full recompute from the grid
+	@Test
+	public void testSanity() {
+		b.sanityCheck();
+		b.commit();
+		b.place(st1, 0, 1);
+		b.sanityCheck();
+		b.commit();
+		b.place(st1, 2, 1);
+		b.sanityCheck();
+		b.commit();
+		b.place(sq1, 1, 4);
+		b.sanityCheck();
+		b.clearRows();
+		b.sanityCheck();
+		b.undo();
+		b.sanityCheck();
+		b.commit();
+		b.clear();
+		b.sanityCheck();
+		assertEquals(0, b.getMaxHeight());
+	}
+
+	// Once committed, there is nothing left to undo
+	@Test
+	public void testUndoAfterCommit() {
+		b.commit();
+		b.place(st1, 0, 1);
+		b.clearRows();
+		b.commit();
+		b.undo();
+		assertEquals(4, b.getColumnHeight(0));
+		assertEquals(4, b.getMaxHeight());
+		b.undo();
+		assertEquals(4, b.getMaxHeight());
+	}
+
+	// clearRows() and the undo of it should not allocate anything
+	@Test
+	public void testClearRowsAllocation() {
+		Assume.assumeFalse(Board.DEBUG);    // sanityCheck() allocates
+		Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+
+		// Two full rows with a stick poking out on top.
+		b.undo();
+		b.place(sq1, 0, 0);
+		b.commit();
+		b.place(st1, 2, 0);
+		b.commit();
+		b.place(st1, 0, 2);
+		b.commit();
+
+		final int rounds = 10000;
+		for (int i = 0; i < rounds; i++) {    // warm up
+			b.clearRows();
+			b.undo();
+		}
+
+		long before = bean.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < rounds; i++) {
+			b.clearRows();
+			b.undo();
+		}
+		long allocated = bean.getThreadAllocatedBytes(thread) - before;
+		assertEquals(2, b.clearRows());
+		b.commit();
+		assertEquals(0, b.clearRows());
+
+		// Allow for a little noise from the bean itself.
+		assertTrue("clearRows allocated " + allocated + " bytes", allocated < rounds);
+	}
+
+	// Rows read as bitmasks, bit x for column x
+	@Test
+	public void testCopyRows() {
+		long[] rows = new long[5];
+		b.copyRows(0, 3, rows, 1);
+		assertEquals(0, rows[0]);
+		assertEquals(0b111, rows[1]);
+		assertEquals(0b010, rows[2]);
+		assertEquals(0, rows[3]);
+		assertEquals(0b010, b.getRowMask(1));
+
+		b.undo();
+		b.copyRows(0, 2, rows, 0);
+		assertEquals(0, rows[0] | rows[1]);
+	}
+
+	// A piece both out of bounds and on a block gets the code of
+	// whichever of its blocks comes first, on either engine
+	@Test
+	public void testPlaceErrorOrder() {
+		b.commit();
+		assertEquals(Board.PLACE_BAD, b.place(new Piece("0 0 3 0"), 1, 1));
+		b.undo();
+		assertEquals(Board.PLACE_OUT_BOUNDS, b.place(new Piece("3 0 0 0"), 1, 1));
+		b.undo();
+		assertEquals(Board.PLACE_OUT_BOUNDS, b.place(new Piece("0 0 0 1"), 1, -1));
+		b.undo();
+		assertEquals(Board.PLACE_BAD, b.place(new Piece("0 1 0 0"), 1, -1));
+		b.undo();
+		assertEquals(2, b.getMaxHeight());
+	}
+
+	// Changed blocks are reported as one box, once.
+	@Test
+	public void testDirty() {
+		int[] region = new int[4];
+		assertTrue(b.takeDirty(region));
+		assertArrayEquals(new int[]{0, 0, 2, 1}, region);
+		assertFalse(b.takeDirty(region));
+
+		b.undo();
+		assertTrue(b.takeDirty(region));
+		assertArrayEquals(new int[]{0, 0, 2, 1}, region);
+
+		// Clearing the bottom row drops the 1 block above it.
+		b.place(pyr1, 0, 0);
+		b.clearRows();
+		assertTrue(b.takeDirty(region));
+		assertArrayEquals(new int[]{0, 0, 2, 1}, region);
+		assertFalse(b.takeDirty(region));
+
+		b.commit();
+		b.clear();
+		assertTrue(b.takeDirty(region));
+		assertArrayEquals(new int[]{0, 0, 2, 5}, region);
+	}
+
+	// The read path should not allocate anything
+	@Test
+	public void testReadAllocation() {
+		Assume.assumeFalse(Board.DEBUG);
+		Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+
+		final int rounds = 10000;
+		long[] rows = new long[b.getHeight()];
+		long sum = 0;
+		long before = 0;
+		for (int round = 0; round < 2; round++) {    // warm up, then measure
+			before = bean.getThreadAllocatedBytes(thread);
+			for (int i = 0; i < rounds; i++) {
+				for (int x = -1; x <= b.getWidth(); x++) {
+					for (int y = -1; y <= b.getHeight(); y++) {
+						if (b.getGrid(x, y)) sum++;
+					}
+				}
+				for (int x = 0; x < b.getWidth(); x++) sum += b.getColumnHeight(x) + b.dropHeight(pyr1, 0);
+				for (int y = 0; y < b.getHeight(); y++) sum += b.getRowWidth(y);
+				b.copyRows(0, b.getHeight(), rows, 0);
+				sum += rows[0];
+			}
+		}
+		long allocated = bean.getThreadAllocatedBytes(thread) - before;
+
+		assertTrue(sum > 0);
+		assertTrue("reads allocated " + allocated + " bytes", allocated < rounds);
+	}
+
+	// Several levels of place()/clearRows() come back one mark at a time
+	@Test
+	public void testMarks() {
+		int empty = b.mark();
+		b.place(st1, 0, 1);
+		int stick = b.mark();
+		b.place(st1, 2, 1);
+		assertEquals(2, b.clearRows());
+		int cleared = b.mark();
+		b.place(st1, 1, 0);
+		assertEquals(4, b.getMaxHeight());
+
+		// plain undo() only backs out the last level
+		b.undo();
+		assertEquals(3, b.getMaxHeight());
+		b.undo();
+		assertEquals(3, b.getMaxHeight());
+
+		b.rollbackTo(cleared);
+		assertEquals(3, b.getMaxHeight());
+		assertEquals(0, b.getColumnHeight(1));
+
+		b.rollbackTo(stick);
+		assertEquals(5, b.getColumnHeight(0));
+		assertEquals(1, b.getColumnHeight(2));
+		assertEquals(3, b.getRowWidth(0));
+
+		b.rollbackTo(empty);
+		assertEquals(2, b.getMaxHeight());
+		assertEquals(1, b.getColumnHeight(0));
+		b.sanityCheck();
+
+		// back to the ordinary single level undo
+		b.place(st1, 0, 1);
+		b.undo();
+		assertEquals(2, b.getMaxHeight());
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testReleasedMark() {
+		int mark = b.mark();
+		b.rollbackTo(mark);
+		b.rollbackTo(mark);
+	}
+
+	// A copy has the same blocks but is independent from the original
+	@Test
+	public void testCopy() {
+		b.commit();
+		Board copy = b.copy();
+		assertEquals(b.toString(), copy.toString());
+		assertEquals(b.getClass(), copy.getClass());
+		copy.place(st1, 0, 1);
+		assertEquals(5, copy.getMaxHeight());
+		assertEquals(2, b.getMaxHeight());
+		copy.undo();
+		assertEquals(b.toString(), copy.toString());
+		copy.sanityCheck();
+
+		// Boards of one size, copies or not, share one key table
+		assertSame(b.zobrist, copy.zobrist);
+		assertSame(b.zobrist, new Board(3, 6).zobrist);
+	}
+
+}
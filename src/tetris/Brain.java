@@ -14,6 +14,16 @@ public interface Brain {
 	 */
 	Brain.Move bestMove(Board board, Piece piece, int limitHeight, Brain.Move move);
 
+	/**
+	 * Same as bestMove() above, but also told which piece comes
+	 * after this one (or null if that is not known yet), so brains
+	 * that look ahead can plan for it. The returned move is still
+	 * for piece only. Brains that don't look ahead ignore nextPiece.
+	 */
+	default Brain.Move bestMove(Board board, Piece piece, Piece nextPiece, int limitHeight, Brain.Move move) {
+		return bestMove(board, piece, limitHeight, move);
+	}
+
 	// Move is used as a struct to store a single Move
 	// ("static" here means it does not have a pointer to an
 	// enclosing tetris.Brain object, it's just in the tetris.Brain namespace.)
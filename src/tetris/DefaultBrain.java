@@ -12,9 +12,34 @@ package tetris;// tetris.DefaultBrain.java
  * play with the lowest score. Undo() is used to back-out
  * each play before trying the next. To experiment with writing your own
  * brain -- just subclass off tetris.DefaultBrain and override rateBoard().
+ * <p>
+ * With setCache(), ratings are looked up by board hash first, so
+ * placements that end in the same blocks are only rated once.
  */
 
 public class DefaultBrain implements Brain {
+	// rateBoard() may be called from several threads (see
+	// tetris.ParallelBrain), so each gets its own feature buffer.
+	private static final ThreadLocal<BoardFeatures> FEATURES = ThreadLocal.withInitial(BoardFeatures::new);
+
+	private EvaluationCache cache;    // null for no caching
+
+	/**
+	 * Makes bestMove() remember board ratings in the given cache,
+	 * or stop caching if it is null. The cache must only be used
+	 * by this brain and for boards of one size.
+	 */
+	public void setCache(EvaluationCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Returns the cache set by setCache(), if any.
+	 */
+	public EvaluationCache getCache() {
+		return cache;
+	}
+
 	/**
 	 * Given a piece and a board, returns a move object that represents
 	 * the best play for that piece, or returns null if no play is possible.
@@ -45,7 +70,7 @@ public class DefaultBrain implements Brain {
 					if (result <= Board.PLACE_ROW_FILLED) {
 						if (result == Board.PLACE_ROW_FILLED) board.clearRows();
 
-						double score = rateBoard(board);
+						double score = evaluate(board);
 
 						if (score < bestScore) {
 							bestScore = score;
@@ -74,12 +99,32 @@ public class DefaultBrain implements Brain {
 	}
 
 
+	/**
+	 * Returns rateBoard() of the board, going through
+	 * the cache if there is one.
+	 */
+	protected double evaluate(Board board) {
+		if (cache == null) return rateBoard(board);
+
+		long hash = board.getHash();
+		double score = cache.get(hash);
+		if (Double.isNaN(score)) {
+			score = rateBoard(board);
+			cache.put(hash, score);
+		}
+		return score;
+	}
+
+
 	/*
 	 A simple brain function.
 	 Given a board, produce a number that rates
 	 that board position -- larger numbers for worse boards.
 	 This version just counts the height
 	 and the number of "holes" in the board.
+	 On a tetris.BitBoard, which keeps its rows as bitmasks, both
+	 come from one tetris.BoardFeatures pass over them; any other
+	 board is walked cell by cell.
 	*/
 	public double rateBoard(Board board) {
 		final int width = board.getWidth();
@@ -88,18 +133,25 @@ public class DefaultBrain implements Brain {
 		int sumHeight = 0;
 		int holes = 0;
 
-		// Count the holes, and sum up the heights
-		for (int x = 0; x < width; x++) {
-			final int colHeight = board.getColumnHeight(x);
-			sumHeight += colHeight;
-
-			int y = colHeight - 2;    // addr of first possible hole
-
-			while (y >= 0) {
-				if (!board.getGrid(x, y)) {
-					holes++;
+		if (board instanceof BitBoard) {
+			BoardFeatures features = FEATURES.get();
+			features.compute(board);
+			sumHeight = features.get(BoardFeatures.HEIGHT_SUM);
+			holes = features.get(BoardFeatures.HOLES);
+		} else {
+			// Count the holes, and sum up the heights
+			for (int x = 0; x < width; x++) {
+				final int colHeight = board.getColumnHeight(x);
+				sumHeight += colHeight;
+
+				int y = colHeight - 2;    // addr of first possible hole
+
+				while (y >= 0) {
+					if (!board.getGrid(x, y)) {
+						holes++;
+					}
+					y--;
 				}
-				y--;
 			}
 		}
 
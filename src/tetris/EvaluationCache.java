@@ -0,0 +1,173 @@
+package tetris;// tetris.EvaluationCache.java
+
+import java.util.Arrays;
+
+/**
+ * A bounded transposition table from board hashes (tetris.Board.getHash())
+ * to board ratings, so a brain rates each distinct board only once even
+ * when several rotations or columns lead to the same blocks.
+ * <p>
+ * Slots are grouped into buckets of WAYS entries; a hash can only live
+ * in its own bucket. When a bucket is full, it is evicted with the clock
+ * (second chance) algorithm: every hit sets a slot's referenced bit, and
+ * the bucket's hand skips referenced slots once, clearing their bit,
+ * until it finds one that was not used since the hand last passed.
+ * Everything is kept in primitive arrays, so lookups never allocate.
+ * <p>
+ * Not thread-safe -- use one cache per brain per thread, and only for
+ * boards of one size rated by one brain.
+ */
+public class EvaluationCache {
+	public static final int WAYS = 4;
+
+	private final long[] keys;
+	private final double[] values;
+	private final boolean[] valid;
+	private final boolean[] referenced;
+	private final int[] hands;    // clock hand of each bucket
+	private final int bucketMask;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+
+	/**
+	 * Creates a cache with room for at least the given number of
+	 * entries (rounded up to a power of two, and at least WAYS).
+	 */
+	public EvaluationCache(int capacity) {
+		int buckets = 1;
+		while (buckets * WAYS < capacity) buckets <<= 1;
+
+		keys = new long[buckets * WAYS];
+		values = new double[buckets * WAYS];
+		valid = new boolean[buckets * WAYS];
+		referenced = new boolean[buckets * WAYS];
+		hands = new int[buckets];
+		bucketMask = buckets - 1;
+	}
+
+
+	/**
+	 * Returns the bucket of the given hash. Zobrist hashes are
+	 * random already, but mix the high bits in anyway.
+	 */
+	private int bucket(long hash) {
+		return (int) (hash ^ (hash >>> 32)) & bucketMask;
+	}
+
+
+	/**
+	 * Returns the rating stored for the given hash,
+	 * or NaN if there is none.
+	 */
+	public double get(long hash) {
+		int start = bucket(hash) * WAYS;
+		for (int i = start; i < start + WAYS; i++) {
+			if (valid[i] && keys[i] == hash) {
+				referenced[i] = true;
+				hits++;
+				return values[i];
+			}
+		}
+		misses++;
+		return Double.NaN;
+	}
+
+
+	/**
+	 * Stores the rating of the given hash, evicting
+	 * an entry of its bucket if needed.
+	 */
+	public void put(long hash, double value) {
+		int bucket = bucket(hash);
+		int start = bucket * WAYS;
+
+		// Overwrite the same key or fill a free slot if there is one.
+		for (int i = start; i < start + WAYS; i++) {
+			if (!valid[i] || keys[i] == hash) {
+				store(i, hash, value);
+				return;
+			}
+		}
+
+		// Clock: give every referenced slot a second chance.
+		int hand = hands[bucket];
+		while (referenced[start + hand]) {
+			referenced[start + hand] = false;
+			hand = (hand + 1) % WAYS;
+		}
+		store(start + hand, hash, value);
+		hands[bucket] = (hand + 1) % WAYS;
+		evictions++;
+	}
+
+
+	private void store(int slot, long hash, double value) {
+		keys[slot] = hash;
+		values[slot] = value;
+		valid[slot] = true;
+		referenced[slot] = false;
+	}
+
+
+	/**
+	 * Empties the cache and resets the counters.
+	 */
+	public void clear() {
+		Arrays.fill(valid, false);
+		Arrays.fill(referenced, false);
+		Arrays.fill(hands, 0);
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+	}
+
+
+	/**
+	 * Returns the number of slots in the cache.
+	 */
+	public int getCapacity() {
+		return keys.length;
+	}
+
+
+	/**
+	 * Returns how many get() calls found their hash.
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+
+	/**
+	 * Returns how many get() calls did not find their hash.
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+
+	/**
+	 * Returns how many entries put() has thrown out.
+	 */
+	public long getEvictions() {
+		return evictions;
+	}
+
+
+	/**
+	 * Returns the fraction of get() calls that were hits.
+	 */
+	public double getHitRate() {
+		long total = hits + misses;
+		return (total == 0) ? 0 : ((double) hits) / total;
+	}
+
+
+	public String toString() {
+		return "hits " + hits + ", misses " + misses + ", evictions " + evictions
+				+ String.format(" (%.1f%% hit rate)", 100 * getHitRate());
+	}
+}
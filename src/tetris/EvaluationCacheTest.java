@@ -0,0 +1,99 @@
+package tetris;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/*
+  Unit test for tetris.EvaluationCache and the board hash it relies on.
+ */
+public class EvaluationCacheTest {
+
+	@Test
+	public void testGetPut() {
+		EvaluationCache cache = new EvaluationCache(16);
+		assertTrue(Double.isNaN(cache.get(42)));
+		cache.put(42, 1.5);
+		cache.put(0, 2.5);
+		assertEquals(1.5, cache.get(42), 0.0);
+		assertEquals(2.5, cache.get(0), 0.0);
+		cache.put(42, 3.5);
+		assertEquals(3.5, cache.get(42), 0.0);
+		assertEquals(3, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	// A full bucket throws out the entry nobody asked for since
+	@Test
+	public void testClockEviction() {
+		EvaluationCache cache = new EvaluationCache(EvaluationCache.WAYS);    // a single bucket
+		for (int i = 0; i < EvaluationCache.WAYS; i++) {
+			cache.put(i, i);
+		}
+		for (int i = 1; i < EvaluationCache.WAYS; i++) {
+			cache.get(i);
+		}
+		cache.put(100, 100);
+		assertEquals(1, cache.getEvictions());
+		assertTrue(Double.isNaN(cache.get(0)));
+		for (int i = 1; i < EvaluationCache.WAYS; i++) {
+			assertEquals(i, cache.get(i), 0.0);
+		}
+		assertEquals(100, cache.get(100), 0.0);
+	}
+
+	// The same blocks reached in different orders, or on different
+	// engines, hash the same; undo puts the old hash back
+	@Test
+	public void testBoardHash() {
+		Piece square = Piece.getPieces()[Piece.SQUARE];
+		Piece stick = Piece.getPieces()[Piece.STICK];
+		Board first = new Board(10, 24);
+		Board second = new BitBoard(10, 24);
+		assertEquals(0, first.getHash());
+
+		first.place(square, 0, 0);
+		first.commit();
+		first.place(stick, 5, 0);
+		first.commit();
+		second.place(stick, 5, 0);
+		second.commit();
+		second.place(square, 0, 0);
+		assertEquals(first.getHash(), second.getHash());
+
+		long before = first.getHash();
+		first.place(stick.fastRotation(), 0, 2);
+		assertTrue(before != first.getHash());
+		first.undo();
+		assertEquals(before, first.getHash());
+		assertEquals(before, first.copy().getHash());
+	}
+
+	// Caching must not change a single move
+	@Test
+	public void testBrainCache() {
+		DefaultBrain cached = new DefaultBrain();
+		cached.setCache(new EvaluationCache(1 << 12));
+		GameEngine plain = new GameEngine(3);
+		GameEngine withCache = new GameEngine(3);
+		plain.setPieceLimit(200);
+		withCache.setPieceLimit(200);
+
+		plain.play(new DefaultBrain());
+		withCache.play(cached);
+		assertEquals(plain.getScore(), withCache.getScore());
+		assertEquals(plain.getBoard().toString(), withCache.getBoard().toString());
+
+		// Asking again about the same position is all hits.
+		EvaluationCache cache = cached.getCache();
+		Board board = withCache.getBoard();
+		cache.clear();
+		Brain.Move first = cached.bestMove(board, Piece.getPieces()[Piece.L1], JTetris.HEIGHT, null);
+		long misses = cache.getMisses();
+		Brain.Move second = cached.bestMove(board, Piece.getPieces()[Piece.L1], JTetris.HEIGHT, null);
+		assertEquals(misses, cache.getHits());
+		assertEquals(misses, cache.getMisses());
+		assertEquals(first.score, second.score, 0.0);
+	}
+}
@@ -0,0 +1,285 @@
+package tetris;// tetris.GameEngine.java
+
+import java.util.Random;
+
+/**
+ * Headless tetris game for running brains as fast as possible.
+ * Plays by the same rules as tetris.JTetris -- pieces come from
+ * pickNextPiece(), spawn centered at the top, score 1 each plus
+ * 5, 10, 20, 40 for clearing 1-4 rows, and the game is lost once
+ * a landed piece sticks up into the TOP_SPACE rows -- but there is
+ * no timer, no Swing and no falling animation: each piece goes
+ * straight to the spot the brain picked.
+ * <p>
+ * Typical client code looks like...
+ * <pre>
+ * tetris.GameEngine game = new tetris.GameEngine(42);	// seeded, so repeatable
+ * game.play(new tetris.DefaultBrain());
+ * int score = game.getScore();
+ * </pre>
+ */
+public class GameEngine {
+	private final Board board;
+	private final Piece[] pieces;
+	private final Random random;
+
+	// State of the game
+	private boolean gameOn;
+	private int count;          // how many pieces played so far
+	private int score;
+	private int rowsCleared;
+	private int pieceLimit;     // stop after this many pieces, 0 for no limit
+	private Piece nextPiece;    // preview of the piece after the current one
+
+	private Brain.Move move;    // reused for every bestMove() call
+	private ReplayWriter.Game recording;    // null if not recording
+
+
+	/**
+	 * Creates a game on the given empty board, taking its
+	 * pieces from the given random generator.
+	 */
+	public GameEngine(Board board, Random random) {
+		this(board, random, Piece.getPieces());
+	}
+
+
+	/**
+	 * Creates a game on the given empty board that plays with the
+	 * given piece set, e.g. one from tetris.PieceLoader.
+	 */
+	public GameEngine(Board board, Random random, Piece[] pieces) {
+		this.board = board;
+		this.random = random;
+		this.pieces = pieces;
+		gameOn = true;
+	}
+
+
+	/**
+	 * Creates a game on the given empty board with
+	 * a generator seeded by seed.
+	 */
+	public GameEngine(Board board, long seed) {
+		this(board, new Random(seed));
+	}
+
+
+	/**
+	 * Creates a game on a standard tetris.JTetris sized board
+	 * with a generator seeded by seed.
+	 */
+	public GameEngine(long seed) {
+		this(new Board(JTetris.WIDTH, JTetris.HEIGHT + JTetris.TOP_SPACE), seed);
+	}
+
+
+	/**
+	 * Plays 100 seeded games with the default brain
+	 * and prints how fast and how well it went.
+	 */
+	public static void main(String[] args) {
+		final int games = 100;
+		Brain brain = new DefaultBrain();
+
+		long start = System.currentTimeMillis();
+		long pieces = 0;
+		long score = 0;
+		for (int i = 0; i < games; i++) {
+			GameEngine game = new GameEngine(i);
+			game.play(brain);
+			pieces += game.getCount();
+			score += game.getScore();
+		}
+		long delta = Math.max(1, System.currentTimeMillis() - start);
+
+		System.out.println(games + " games, " + pieces + " pieces in " + delta + " ms ("
+				+ (pieces * 1000 / delta) + " pieces/s), average score " + (score / games));
+	}
+
+
+	/**
+	 * Returns the points for clearing the given number
+	 * of rows at once -- 5, 10, 20, 40, or 50 for more
+	 * (which could happen with non-standard pieces).
+	 */
+	public static int rowScore(int cleared) {
+		switch (cleared) {
+			case 0:
+				return 0;
+			case 1:
+				return 5;
+			case 2:
+				return 10;
+			case 3:
+				return 20;
+			case 4:
+				return 40;
+			default:
+				return 50;
+		}
+	}
+
+
+	/**
+	 * Makes the game stop after the given number of pieces,
+	 * like the tetris.JTetris test mode. 0 means no limit.
+	 */
+	public void setPieceLimit(int pieceLimit) {
+		this.pieceLimit = pieceLimit;
+	}
+
+
+	/**
+	 * Records the game from here on to the given replay file, as
+	 * played with the given seed. See tetris.ReplayWriter.
+	 */
+	public void setRecorder(ReplayWriter recorder, long seed) {
+		recording = recorder.startGame(seed, board.getWidth(), board.getHeight(), pieces);
+	}
+
+
+	/**
+	 * Selects the next piece to use using the random generator,
+	 * the same way tetris.JTetris.pickNextPiece() does.
+	 */
+	public Piece pickNextPiece() {
+		int pieceNum = (int) (pieces.length * random.nextDouble());
+		return pieces[pieceNum];
+	}
+
+
+	/**
+	 * Plays the whole game with the given brain.
+	 * Returns the final score.
+	 */
+	public int play(Brain brain) {
+		while (playPiece(brain)) ;
+		return score;
+	}
+
+
+	/**
+	 * Adds a new piece, lets the brain place it, clears rows
+	 * and scores them. Returns false once the game is over.
+	 */
+	public boolean playPiece(Brain brain) {
+		if (!gameOn) return false;
+
+		count++;
+		score++;
+
+		if (pieceLimit > 0 && count == pieceLimit + 1) {
+			count--;
+			score--;
+			return gameOver();
+		}
+
+		// Pieces come through a one piece queue, so
+		// the brain always knows what comes next.
+		Piece piece = (nextPiece != null) ? nextPiece : pickNextPiece();
+		nextPiece = pickNextPiece();
+
+		// Center it up at the top -- if it does not even
+		// fit there, the game is over.
+		int px = (board.getWidth() - piece.getWidth()) / 2;
+		int py = board.getHeight() - piece.getHeight();
+		int result = board.place(piece, px, py);
+		board.undo();
+		if (result > Board.PLACE_ROW_FILLED) {
+			return gameOver();
+		}
+
+		move = brain.bestMove(board, piece, nextPiece, board.getHeight() - JTetris.TOP_SPACE, move);
+
+		// No good place for it, so it just falls straight down.
+		int x = px;
+		Piece landed = piece;
+		if (move != null) {
+			x = move.x;
+			landed = move.piece;
+		}
+		int y = board.dropHeight(landed, x);
+		result = board.place(landed, x, y);
+		if (result > Board.PLACE_ROW_FILLED) {
+			board.undo();
+			return gameOver();
+		}
+		if (recording != null) recording.piece(landed, x, y);
+
+		int cleared = board.clearRows();
+		rowsCleared += cleared;
+		score += rowScore(cleared);
+		board.commit();
+
+		// if the board is too tall, we've lost
+		if (board.getMaxHeight() > board.getHeight() - JTetris.TOP_SPACE) {
+			return gameOver();
+		}
+
+		return gameOn;
+	}
+
+
+	/**
+	 * Ends the game, and its recording if there is one.
+	 * Returns false, for playPiece() to return.
+	 */
+	private boolean gameOver() {
+		gameOn = false;
+		if (recording != null) {
+			recording.end(count, score, rowsCleared);
+			recording = null;
+		}
+		return false;
+	}
+
+
+	/**
+	 * Returns the board the game is played on.
+	 */
+	public Board getBoard() {
+		return board;
+	}
+
+
+	/**
+	 * Returns the piece that will be played after the
+	 * current one, or null before the first piece.
+	 */
+	public Piece getNextPiece() {
+		return nextPiece;
+	}
+
+
+	/**
+	 * Returns true while the game is still going.
+	 */
+	public boolean isGameOn() {
+		return gameOn;
+	}
+
+
+	/**
+	 * Returns how many pieces have been played.
+	 */
+	public int getCount() {
+		return count;
+	}
+
+
+	/**
+	 * Returns the score, counted like tetris.JTetris does.
+	 */
+	public int getScore() {
+		return score;
+	}
+
+
+	/**
+	 * Returns the total number of rows cleared.
+	 */
+	public int getRowsCleared() {
+		return rowsCleared;
+	}
+}
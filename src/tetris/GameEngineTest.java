@@ -0,0 +1,63 @@
+package tetris;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/*
+  Unit test for the headless tetris.GameEngine.
+ */
+public class GameEngineTest {
+
+	@Test
+	public void testRowScore() {
+		assertEquals(0, GameEngine.rowScore(0));
+		assertEquals(5, GameEngine.rowScore(1));
+		assertEquals(10, GameEngine.rowScore(2));
+		assertEquals(20, GameEngine.rowScore(3));
+		assertEquals(40, GameEngine.rowScore(4));
+		assertEquals(50, GameEngine.rowScore(5));
+	}
+
+	// Same seed, same game -- on either board engine
+	@Test
+	public void testSeeded() {
+		GameEngine first = new GameEngine(7);
+		GameEngine second = new GameEngine(new BitBoard(JTetris.WIDTH, JTetris.HEIGHT + JTetris.TOP_SPACE), 7);
+		first.setPieceLimit(300);
+		second.setPieceLimit(300);
+		first.play(new DefaultBrain());
+		second.play(new DefaultBrain());
+
+		assertEquals(first.getCount(), second.getCount());
+		assertEquals(first.getScore(), second.getScore());
+		assertEquals(first.getRowsCleared(), second.getRowsCleared());
+		assertEquals(first.getBoard().toString(), second.getBoard().toString());
+	}
+
+	@Test
+	public void testPieceLimit() {
+		GameEngine game = new GameEngine(0);
+		game.setPieceLimit(100);
+		int score = game.play(new DefaultBrain());
+
+		assertFalse(game.isGameOn());
+		assertEquals(100, game.getCount());
+		assertEquals(score, game.getScore());
+		assertTrue(score >= 100 + 5 * game.getRowsCleared());
+		assertFalse(game.playPiece(new DefaultBrain()));
+	}
+
+	// A brain that plays as badly as it can loses quickly
+	@Test
+	public void testGameOver() {
+		GameEngine game = new GameEngine(0);
+		int score = game.play(new BadBrain());
+
+		assertFalse(game.isGameOn());
+		assertTrue(game.getCount() < 100);
+		assertTrue(score >= game.getCount());
+	}
+}
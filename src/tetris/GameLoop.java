@@ -0,0 +1,181 @@
+package tetris;// tetris.GameLoop.java
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fixed-timestep loop on a thread of its own. Calls step a set
+ * number of times per second, and after the steps show, at most
+ * MAX_FPS times per second, to hand their result to whoever
+ * draws it.
+ * <p>
+ * Steps are paced by the clock, but never depend on it: a loop
+ * that wakes up late runs the steps it missed (up to MAX_CATCH_UP
+ * at once) before it shows anything, so a game played by the steps
+ * comes out the same however busy the machine is. A rate of 0
+ * runs the steps flat out, for testing brains faster than real time.
+ * <pre>
+ * tetris.GameLoop loop = new tetris.GameLoop("game", game::step, game::show);
+ * loop.setRate(60);	// steps per second
+ * loop.start();
+ * </pre>
+ */
+public class GameLoop {
+	// Most steps run before showing, when the loop has fallen behind.
+	// Any more than that are skipped, rather than never catching up.
+	public static final int MAX_CATCH_UP = 10;
+	// Most times show is called per second.
+	public static final int MAX_FPS = 60;
+
+	private final String name;
+	private final Runnable step;
+	private final Runnable show;
+
+	private volatile double rate = 60;    // steps per second, 0 for flat out
+	private volatile boolean running;
+	private volatile long steps;          // how many steps so far
+	private Thread thread;
+
+
+	/**
+	 * Creates a loop, not started yet, calling the given step
+	 * and show on a thread of the given name.
+	 */
+	public GameLoop(String name, Runnable step, Runnable show) {
+		this.name = name;
+		this.step = step;
+		this.show = show;
+	}
+
+
+	/**
+	 * Sets how many steps to run per second, or 0 (or less) to run
+	 * them as fast as possible. Takes effect with the next step.
+	 */
+	public void setRate(double rate) {
+		this.rate = rate;
+		Thread t = thread;
+		if (t != null) LockSupport.unpark(t);
+	}
+
+
+	/**
+	 * Returns the steps per second, 0 or less for flat out.
+	 */
+	public double getRate() {
+		return rate;
+	}
+
+
+	/**
+	 * Returns how many steps have run since the loop was made.
+	 */
+	public long getSteps() {
+		return steps;
+	}
+
+
+	/**
+	 * Returns true from start() until the loop has been stopped.
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+
+	/**
+	 * Starts a new loop thread, after waiting for the old one to
+	 * finish if it was stopped from inside a step. The first step
+	 * runs one step's time from now. Does nothing if the loop is
+	 * running already.
+	 */
+	public void start() {
+		if (running) return;
+		stop();
+
+		synchronized (this) {
+			running = true;
+			thread = new Thread(this::run, name);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+
+	/**
+	 * Stops the loop once the step running now, if any, is done.
+	 * From any other thread, also waits for the loop thread to
+	 * finish -- after that, the state the steps work on is safe
+	 * to use from the calling thread.
+	 */
+	public void stop() {
+		Thread t;
+		synchronized (this) {
+			running = false;
+			t = thread;
+		}
+		if (t == null || t == Thread.currentThread()) return;
+
+		LockSupport.unpark(t);
+		boolean interrupted = false;
+		while (t.isAlive()) {
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+	}
+
+
+	/**
+	 * The loop itself. last is when the most recent step was due,
+	 * so steps keep to the rate on average whatever the sleeps do.
+	 */
+	private void run() {
+		final long showNanos = 1_000_000_000L / MAX_FPS;
+		long last = System.nanoTime();
+		long lastShow = last - showNanos;
+		boolean unshown = false;    // steps have run since the last show
+
+		while (running) {
+			double r = rate;
+			long now = System.nanoTime();
+
+			if (r <= 0) {
+				step.run();
+				steps++;
+				unshown = true;
+				last = now;
+			} else {
+				long period = (long) (1e9 / r);
+				int n = 0;
+				while (running && (now - (last + period)) >= 0 && n < MAX_CATCH_UP) {
+					step.run();
+					steps++;
+					unshown = true;
+					last += period;
+					n++;
+				}
+				if (n == MAX_CATCH_UP) last = now;    // too far behind, start over from here
+			}
+
+			now = System.nanoTime();
+			if (unshown && (now - lastShow) >= showNanos) {
+				show.run();
+				unshown = false;
+				lastShow = now;
+			}
+
+			// Sleep until the next step is due, or a frame is
+			if (r > 0 && running) {
+				long wait = last + (long) (1e9 / r) - now;
+				if (unshown) wait = Math.min(wait, lastShow + showNanos - now);
+				if (wait > 0) LockSupport.parkNanos(this, wait);
+			}
+		}
+
+		// Whatever the last steps did shows too.
+		if (unshown) show.run();
+	}
+}
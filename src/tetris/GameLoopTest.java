@@ -0,0 +1,85 @@
+package tetris;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/*
+  Unit test for tetris.GameLoop -- steps run on the loop thread,
+  and stopping, from a step or from outside, is clean.
+ */
+public class GameLoopTest {
+
+	// Flat out, a step that stops the loop is the last one,
+	// and the last step always gets shown.
+	@Test
+	public void testStopFromStep() throws InterruptedException {
+		final int[] count = new int[1];
+		final int[] shown = new int[1];
+		final CountDownLatch done = new CountDownLatch(1);
+		final GameLoop[] loop = new GameLoop[1];
+
+		loop[0] = new GameLoop("test", () -> {
+			if (++count[0] == 1000) loop[0].stop();
+		}, () -> {
+			shown[0] = count[0];
+			if (!loop[0].isRunning()) done.countDown();
+		});
+		loop[0].setRate(0);
+		loop[0].start();
+
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		loop[0].stop();    // waits for the thread, so count is safe to read
+		assertEquals(1000, count[0]);
+		assertEquals(1000, shown[0]);
+		assertEquals(1000, loop[0].getSteps());
+		assertFalse(loop[0].isRunning());
+	}
+
+	// Steps keep roughly to the rate, and stop() from
+	// another thread waits for them to be done.
+	@Test
+	public void testRate() throws InterruptedException {
+		final AtomicInteger count = new AtomicInteger();
+		final AtomicInteger shown = new AtomicInteger();
+		GameLoop loop = new GameLoop("test", count::incrementAndGet, shown::incrementAndGet);
+		loop.setRate(200);
+		loop.start();
+		Thread.sleep(500);
+		loop.stop();
+
+		int steps = count.get();
+		assertTrue("steps " + steps, steps >= 25 && steps <= 110);
+		assertEquals(steps, loop.getSteps());
+		assertTrue(shown.get() <= steps);
+
+		Thread.sleep(50);
+		assertEquals(steps, count.get());
+	}
+
+	// A stopped loop starts again where it left off
+	@Test
+	public void testRestart() throws InterruptedException {
+		final AtomicInteger count = new AtomicInteger();
+		GameLoop loop = new GameLoop("test", count::incrementAndGet, () -> {
+		});
+		loop.setRate(0);
+		loop.start();
+		Thread.sleep(20);
+		loop.stop();
+		long first = loop.getSteps();
+		assertTrue(first > 0);
+
+		loop.start();
+		Thread.sleep(20);
+		loop.stop();
+		assertTrue(loop.getSteps() > first);
+		assertEquals(count.get(), loop.getSteps());
+	}
+}
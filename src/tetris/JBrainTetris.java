@@ -2,6 +2,11 @@ package tetris;
 
 import javax.swing.*;
 import java.awt.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * CS108 Tetris Game.
@@ -14,18 +19,57 @@ import java.awt.*;
  * During animation, filled rows draw as green.
  * Clearing 1-4 rows scores 5, 10, 20, 40 points.
  * Clearing 4 rows at a time beeps!
+ * <p>
+ * The brain never runs on the game loop thread. As soon as a piece spawns,
+ * a copy of the board goes to a background thread, and the piece is
+ * steered from the first DOWN tick the move is in by. In real time the
+ * loop never waits for it: a piece whose move is late just falls, and
+ * is steered from lower down, so a seeded game can differ from run to
+ * run on a busy machine. Run Fast forward, the DOWN tick waits for the
+ * move instead, and a seeded game with the default brain plays the same
+ * every time. Lookahead and Anytime search stop on the clock, so they
+ * can play differently at any speed.
+ * <p>
+ * After each move, the default brain also works out its move for the
+ * next piece, on the board that move will leave. If the piece spawns on
+ * that very board (same hash), that is its move, with nothing left to do.
  */
 public class JBrainTetris extends JTetris {
 	// Graphics
 	private JComponent panel;
 	private JPanel little;
 	private JCheckBox brainMode;
+	private JCheckBox lookaheadMode;
+	private JCheckBox anytimeMode;
 	private JSlider adversary;
 
-	// Brain
+	// The controls as last set on the Swing thread, copied by their
+	// listeners, so the game loop thread never reads Swing state.
+	private volatile boolean brainOn;
+	private volatile boolean lookaheadOn;
+	private volatile boolean anytimeOn;
+	private volatile int adversaryLevel;
+
+	// Brains -- only ever used on the brain thread.
 	private DefaultBrain brain;
-	private Brain.Move move;
-	private int count;
+	private LookaheadBrain lookahead;
+	private AnytimeBrain anytime;
+
+	// Brain thread, and what it has come up with.
+	private final ExecutorService thinker;
+	private volatile int generation;              // bumped for every piece, stale work is dropped
+	private int thinkingFor = -1;                 // super.count of the piece pending is for
+	private CompletableFuture<Brain.Move> pending;
+	private volatile Plan speculation;            // default brain's move for the piece after it
+	private Brain.Move move;                      // what the ticks steer towards, or null
+
+	// Adversary, rating every piece at once on the common pool.
+	// The moves are reused from pick to pick.
+	private DefaultBrain adversaryBrain;
+	private Brain.Move[] adversaryMoves;
+	private boolean[] adversaryFound;
+	private Piece[] adversaryPieces;              // the set and board
+	private long adversaryHash;                   // the moves are for
 
 	/**
 	 * Initialize the board and some instance variables.
@@ -35,7 +79,32 @@ public class JBrainTetris extends JTetris {
 	public JBrainTetris(int pixels) {
 		super(pixels);
 		brain = new DefaultBrain();
-		count = 0;
+		lookahead = new LookaheadBrain();
+		anytime = new AnytimeBrain();
+		adversaryBrain = new DefaultBrain();
+
+		thinker = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "brain");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+
+	/**
+	 * A move worked out ahead of time for the given
+	 * piece on the board with the given hash.
+	 */
+	private static class Plan {
+		final long hash;
+		final Piece piece;
+		final Brain.Move move;
+
+		Plan(long hash, Piece piece, Brain.Move move) {
+			this.hash = hash;
+			this.piece = piece;
+			this.move = move;
+		}
 	}
 
 	/**
@@ -50,20 +119,37 @@ public class JBrainTetris extends JTetris {
 			UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
 		} catch (Exception ignored) {
 		}
+		PieceRegistry.warmUp();
 
 		JTetris brainTetris = new JBrainTetris(16);
+		brainTetris.setPieces(loadPieces(args));
+		recordIfAsked(brainTetris);
 		JFrame frame = JBrainTetris.createFrame(brainTetris);
 		frame.setVisible(true);
 	}
 
+	/**
+	 * While the adversary is on, pieces are not queued up: each one is
+	 * picked as it spawns, so the adversary rates it on the board it
+	 * really lands on, and there is no next piece to look ahead to.
+	 */
+	@Override
+	protected boolean queueNextPiece() {
+		return adversaryLevel == 0;
+	}
+
 	/**
 	 * Randomly selects the worst piece if adversary value is >= 0.
+	 * Called as the piece spawns (see queueNextPiece()), so the board
+	 * is the one it will land on. Every piece is rated at once, each on
+	 * its own copy of the board, and the moves are kept so the player
+	 * brain can reuse the one for the piece it gets.
 	 * @return worst piece
 	 */
 	@Override
 	public Piece pickNextPiece() {
 		// Get the slider value.
-		int sliderNumber = adversary.getValue();
+		int sliderNumber = adversaryLevel;
 		// This has to be here for brain to work correctly for some reason.
 		if (sliderNumber == 0) return super.pickNextPiece();
 
@@ -72,41 +158,178 @@ public class JBrainTetris extends JTetris {
 
 		// If the randomNumber is >= than the slider piece should be
 		// chosen randomly by super's pickNextPiece().
-		if (randomNumber >= sliderNumber) {
-			System.out.println("*ok*");
-			return super.pickNextPiece();
+		if (randomNumber >= sliderNumber) return super.pickNextPiece();
+
+		if (adversaryMoves == null || adversaryMoves.length != pieces.length) {
+			adversaryMoves = new Brain.Move[pieces.length];
+			for (int i = 0; i < pieces.length; i++) adversaryMoves[i] = new Brain.Move();
+			adversaryFound = new boolean[pieces.length];
+		}
+
+		board.commit();
+		final Piece[] candidates = pieces;
+		ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[candidates.length];
+		for (int i = 0; i < candidates.length; i++) {
+			final int index = i;
+			final Board copy = board.copy();
+			tasks[i] = ForkJoinPool.commonPool().submit(() -> {
+				adversaryFound[index] =
+						adversaryBrain.bestMove(copy, candidates[index], HEIGHT, adversaryMoves[index]) != null;
+			});
+		}
+
+		// Choose the piece whose best move is worst,
+		// earlier pieces winning ties.
+		int worst = -1;
+		for (int i = 0; i < candidates.length; i++) {
+			tasks[i].join();
+			if (adversaryFound[i] && (worst < 0 || adversaryMoves[worst].score < adversaryMoves[i].score)) {
+				worst = i;
+			}
+		}
+		adversaryHash = board.getHash();
+		adversaryPieces = candidates;
+
+		return (worst >= 0) ? candidates[worst] : super.pickNextPiece();
+	}
+
+	/**
+	 * Returns a copy of the move the adversary found for the given
+	 * piece on the board with the given hash, or null if it has none.
+	 */
+	private Brain.Move adversaryMove(long hash, Piece piece) {
+		if (adversaryPieces != pieces || adversaryHash != hash) return null;
+		for (int i = 0; i < pieces.length; i++) {
+			if (pieces[i] == piece && adversaryFound[i]) {
+				Brain.Move found = new Brain.Move();
+				found.x = adversaryMoves[i].x;
+				found.y = adversaryMoves[i].y;
+				found.piece = adversaryMoves[i].piece;
+				found.score = adversaryMoves[i].score;
+				return found;
+			}
 		}
-		System.out.println("ok");
-
-		Brain.Move worstMove = null;
-		Brain.Move currentMove = null;
-		// Iterate over the pieces and choose a piece
-		// with the worst score. We can just save
-		// Brain.Move objects as they also include Piece.
-		for (Piece piece : pieces) {
-			currentMove = brain.bestMove(board, piece, HEIGHT, null);
-			if (currentMove != null && (worstMove == null || worstMove.score < currentMove.score)) {
-				worstMove = currentMove;
+		return null;
+	}
+
+	/**
+	 * Adds the new piece, and starts the brain
+	 * thinking about it right away.
+	 */
+	@Override
+	public void addNewPiece() {
+		// The board without the new piece is what the brain needs.
+		board.commit();
+		Board settled = board.copy();
+
+		super.addNewPiece();
+		if (gameOn && brainOn) think(settled);
+	}
+
+	/**
+	 * Starts a new game, with nothing left over from the last one
+	 * for the brain to steer by.
+	 */
+	@Override
+	public void startGame() {
+		loop.stop();
+		forget();
+		super.startGame();
+	}
+
+	/**
+	 * Stops the game, and drops whatever the brain is working on.
+	 */
+	@Override
+	public void stopGame() {
+		super.stopGame();
+		forget();
+	}
+
+	/**
+	 * Drops whatever the brain is working on, or has come up with.
+	 * Only call with the game loop stopped.
+	 */
+	private void forget() {
+		generation++;
+		thinkingFor = -1;
+		pending = null;
+		speculation = null;
+		move = null;
+	}
+
+	/**
+	 * Hands the current piece on the given board (a copy,
+	 * without the piece) to the brain thread.
+	 */
+	private void think(Board settled) {
+		thinkingFor = super.count;
+		final int job = ++generation;
+
+		// Pick the brain here, on the game loop thread.
+		final Brain player;
+		if (anytimeOn) player = anytime;
+		else if (lookaheadOn) player = lookahead;
+		else player = brain;
+		// Anytime searches as deep as fits in half a tick of the
+		// speed slider, so the piece gets going on time.
+		// Flat out, it just gets the default.
+		final long budget = (dropNanos() > 0) ? dropNanos() / 2 : AnytimeBrain.DEFAULT_BUDGET_NANOS;
+		final Piece piece = currentPiece;
+		final Piece next = nextPiece;
+
+		// The default brain may have rated this piece on this very board
+		// already -- as the adversary, or guessing ahead after the last
+		// move. Its moves only depend on the board, so that is the move.
+		Brain.Move known = null;
+		Plan guess = speculation;
+		speculation = null;
+		if (player == brain) {
+			known = adversaryMove(settled.getHash(), piece);
+			if (known == null && guess != null && guess.piece == piece && guess.hash == settled.getHash()) {
+				known = guess.move;
 			}
 		}
 
-		// Return piece from the worst move.
-		return (worstMove != null) ? worstMove.piece : super.pickNextPiece();
+		final CompletableFuture<Brain.Move> result = new CompletableFuture<>();
+		if (known != null) result.complete(known);
+		pending = result;
+		move = null;
+		thinker.execute(() -> {
+			if (job != generation) return;
+			anytime.setBudgetNanos(budget);
+			Brain.Move best = result.isDone() ? result.join() : player.bestMove(settled, piece, next, HEIGHT, null);
+			result.complete(best);
+
+			// Now work out the next move, assuming this one is played.
+			if (player != brain || best == null || next == null || job != generation) return;
+			if (settled.place(best.piece, best.x, best.y) == Board.PLACE_ROW_FILLED) settled.clearRows();
+			settled.commit();
+			Brain.Move nextBest = brain.bestMove(settled, next, HEIGHT, null);
+			if (nextBest != null && job == generation) speculation = new Plan(settled.getHash(), next, nextBest);
+		});
 	}
 
 	/**
-	 * Uses brain to compute the best possible move for each piece.
+	 * Steers the current piece towards the brain's move.
 	 * @param verb
 	 */
 	@Override
 	public void tick(int verb) {
 		// Check if the brainMode is active
-		if (brainMode.isSelected() && verb == DOWN) {
-			if (count != super.count) {
-				count = super.count;
+		if (brainOn && verb == DOWN && gameOn) {
+			// Brain just switched on -- start thinking about this piece.
+			if (thinkingFor != super.count) {
 				board.undo();
-				// Calculate best move for this piece with regards to board height.
-				move = brain.bestMove(board, currentPiece, HEIGHT, move);
+				think(board.copy());
+			}
+
+			// Take the move once it is in. Until then the piece just
+			// falls -- only flat out, where no one is watching the clock,
+			// is it worth waiting for, so seeded games play the same.
+			if (pending != null && (pending.isDone() || loop.getRate() <= 0)) {
+				move = pending.join();
+				pending = null;
 			}
 
 			// Tries to match best move by rotating and
@@ -149,6 +372,17 @@ public class JBrainTetris extends JTetris {
 		// Make brain checkbox and add it to the panel.
 		brainMode = new JCheckBox("Brain active");
 		panel.add(brainMode);
+		brainMode.addChangeListener(e -> brainOn = brainMode.isSelected());
+
+		// Lookahead uses the next piece preview too.
+		lookaheadMode = new JCheckBox("Lookahead");
+		panel.add(lookaheadMode);
+		lookaheadMode.addChangeListener(e -> lookaheadOn = lookaheadMode.isSelected());
+
+		// Anytime searches deeper the slower the game goes.
+		anytimeMode = new JCheckBox("Anytime search");
+		panel.add(anytimeMode);
+		anytimeMode.addChangeListener(e -> anytimeOn = anytimeMode.isSelected());
 
 		// Make a little panel, put a JSlider in it
 		// and add it to the main panel.
@@ -156,6 +390,7 @@ public class JBrainTetris extends JTetris {
 		little.add(new JLabel("Adversary:"));
 		adversary = new JSlider(0, 100, 0); // min, max, current
 		adversary.setPreferredSize(new Dimension(100, 15));
+		adversary.addChangeListener(e -> adversaryLevel = adversary.getValue());
 		little.add(adversary);
 		panel.add(little);
 
@@ -0,0 +1,258 @@
+package tetris;// tetris.JSpectator.java
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Shows many games at once, as a grid of little boards -- for
+ * keeping an eye on a whole batch of brains at work.
+ * <p>
+ * Games run on their own threads and call publish() after each
+ * piece. That copies the rows of the board into a spare buffer and
+ * swaps it in, so the game never waits for the GUI, and a board
+ * published twice between frames only shows the last time.
+ * A Swing timer repaints at a fixed frame rate, and only if
+ * something was published. Each frame redraws just the boards that
+ * changed, into an image kept between frames, so hundreds of boards
+ * cost little more to watch than a few.
+ * <pre>
+ * tetris.JSpectator spectator = new tetris.JSpectator(256, 25, 10, 24, 4);
+ * spectator.start(30);                  // 30 frames per second
+ * spectator.publish(slot, board);       // from any game thread
+ * </pre>
+ */
+public class JSpectator extends JComponent {
+	// Pixels left between boards
+	public static final int GAP = 2;
+
+	private final int slots;
+	private final int columns;
+	private final int boardWidth;
+	private final int boardHeight;
+	private final int tileWidth;     // one board in pixels,
+	private final int tileHeight;    // with a 1 pixel border
+
+	// Each slot passes row buffers between the game and the Swing
+	// thread, and each buffer is only ever held by one of them.
+	private final AtomicReferenceArray<long[]> fresh;    // published, not drawn yet
+	private final AtomicReferenceArray<long[]> spare;    // free for the next publish()
+	private final long[][] shown;                        // drawn (Swing thread only)
+	private volatile boolean changed;                    // published since the last frame
+
+	private BufferedImage image;    // all the boards, kept between frames
+	private javax.swing.Timer timer;
+
+
+	/**
+	 * Creates a spectator for the given number of boards, laid out
+	 * the given number to a row. Boards are boardWidth by boardHeight
+	 * blocks (at most 64 wide), and each block is drawn with the given
+	 * number of pixels.
+	 */
+	public JSpectator(int slots, int columns, int boardWidth, int boardHeight, int pixels) {
+		super();
+		this.slots = slots;
+		this.columns = columns;
+		this.boardWidth = boardWidth;
+		this.boardHeight = boardHeight;
+
+		// Same size as a tetris.JTetris of that many pixels
+		tileWidth = (boardWidth * pixels) + 2;
+		tileHeight = (boardHeight * pixels) + 2;
+
+		fresh = new AtomicReferenceArray<long[]>(slots);
+		spare = new AtomicReferenceArray<long[]>(slots);
+		shown = new long[slots][];
+
+		int rows = (slots + columns - 1) / columns;
+		setPreferredSize(new Dimension(columns * (tileWidth + GAP) - GAP, rows * (tileHeight + GAP) - GAP));
+	}
+
+
+	/**
+	 * Watches games of the default brain, as fast as they go or
+	 * at the given number of pieces per second per game:
+	 * JSpectator [games] [pixels] [threads] [pieces per second] [piece file]
+	 */
+	public static void main(String[] args) throws Exception {
+		final int games = (args.length > 0) ? Integer.parseInt(args[0]) : 256;
+		int pixels = (args.length > 1) ? Integer.parseInt(args[1]) : 4;
+		int threads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		final int rate = (args.length > 3) ? Integer.parseInt(args[3]) : 10;
+		final Piece[] pieces = (args.length > 4) ? PieceLoader.load(Paths.get(args[4])) : Piece.getPieces();
+
+		PieceRegistry.warmUp();
+
+		// Roughly as wide as tall
+		final int width = JTetris.WIDTH;
+		final int height = JTetris.HEIGHT + JTetris.TOP_SPACE;
+		int columns = (int) Math.ceil(Math.sqrt(games * (double) height / width));
+		final JSpectator spectator = new JSpectator(games, columns, width, height, pixels);
+
+		SwingUtilities.invokeAndWait(() -> {
+			JFrame frame = new JFrame("Spectator -- " + games + " games");
+			frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+			frame.add(new JScrollPane(spectator));
+			frame.pack();
+			frame.setVisible(true);
+			spectator.start(30);
+		});
+
+		// Each thread plays its share of the slots a piece at a time,
+		// and starts a new game in a slot once the old one is over.
+		final AtomicInteger started = new AtomicInteger();
+		for (int t = 0; t < threads; t++) {
+			final int first = t;
+			final int step = threads;
+			Thread thread = new Thread(() -> {
+				Brain brain = new DefaultBrain();
+				List<GameEngine> mine = new ArrayList<GameEngine>();
+				List<Integer> slotOf = new ArrayList<Integer>();
+				for (int slot = first; slot < games; slot += step) {
+					mine.add(null);
+					slotOf.add(slot);
+				}
+
+				while (true) {
+					long start = System.nanoTime();
+					for (int i = 0; i < mine.size(); i++) {
+						GameEngine game = mine.get(i);
+						if (game == null || !game.isGameOn()) {
+							Random random = new Random(BatchRunner.seedFor(0, started.getAndIncrement()));
+							game = new GameEngine(new Board(width, height), random, pieces);
+							mine.set(i, game);
+						}
+						game.playPiece(brain);
+						spectator.publish(slotOf.get(i), game.getBoard());
+					}
+
+					if (rate > 0) {
+						long left = 1_000_000_000L / rate - (System.nanoTime() - start);
+						if (left > 0) {
+							try {
+								Thread.sleep(left / 1_000_000, (int) (left % 1_000_000));
+							} catch (InterruptedException e) {
+								return;
+							}
+						}
+					}
+				}
+			}, "game-" + t);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+
+	/**
+	 * Starts repainting at the given number of frames per second.
+	 */
+	public void start(int fps) {
+		stop();
+		timer = new javax.swing.Timer(Math.max(1, 1000 / fps), e -> {
+			if (changed) {
+				changed = false;
+				repaint();
+			}
+		});
+		timer.start();
+	}
+
+
+	/**
+	 * Stops repainting.
+	 */
+	public void stop() {
+		if (timer != null) timer.stop();
+		timer = null;
+	}
+
+
+	/**
+	 * Shows the given board in the given slot from the next frame on.
+	 * Can be called from any thread, but the board must only be changed
+	 * by that thread and should be committed, e.g. between pieces of a
+	 * tetris.GameEngine. Never blocks, and only allocates the first
+	 * couple of times for each slot.
+	 */
+	public void publish(int slot, Board board) {
+		if (board.getWidth() != boardWidth || board.getHeight() != boardHeight) {
+			throw new RuntimeException("publish board size problem");
+		}
+
+		long[] rows = spare.getAndSet(slot, null);
+		if (rows == null) rows = new long[boardHeight];
+		board.copyRows(0, boardHeight, rows, 0);
+
+		// If the last one was never drawn, it is free again.
+		long[] unseen = fresh.getAndSet(slot, rows);
+		if (unseen != null) spare.compareAndSet(slot, null, unseen);
+		changed = true;
+	}
+
+
+	/**
+	 * Returns the number of boards.
+	 */
+	public int getSlots() {
+		return slots;
+	}
+
+
+	/**
+	 * Draws every board, after bringing the image
+	 * up to date with the ones published since last time.
+	 */
+	public void paintComponent(Graphics g) {
+		Graphics2D ig = null;
+		if (image == null) {
+			Dimension size = getPreferredSize();
+			image = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_RGB);
+			ig = image.createGraphics();
+			ig.setColor(Color.white);
+			ig.fillRect(0, 0, size.width, size.height);
+			for (int slot = 0; slot < slots; slot++) drawTile(ig, slot, null);
+		}
+
+		for (int slot = 0; slot < slots; slot++) {
+			long[] rows = fresh.getAndSet(slot, null);
+			if (rows == null) continue;
+
+			if (ig == null) ig = image.createGraphics();
+			drawTile(ig, slot, rows);
+
+			// The one it replaces can be reused.
+			if (shown[slot] != null) spare.set(slot, shown[slot]);
+			shown[slot] = rows;
+		}
+		if (ig != null) ig.dispose();
+
+		g.drawImage(image, 0, 0, null);
+	}
+
+	// Draws the board in the given slot, empty if rows is null
+	private void drawTile(Graphics2D g, int slot, long[] rows) {
+		Graphics tile = g.create((slot % columns) * (tileWidth + GAP), (slot / columns) * (tileHeight + GAP),
+				tileWidth, tileHeight);
+		tile.setColor(Color.white);
+		tile.fillRect(0, 0, tileWidth, tileHeight);
+		tile.setColor(Color.black);
+		tile.drawRect(0, 0, tileWidth - 1, tileHeight - 1);
+
+		if (rows != null) {
+			float dX = ((float) (tileWidth - 2)) / boardWidth;
+			float dY = ((float) (tileHeight - 2)) / boardHeight;
+			for (int y = 0; y < boardHeight; y++) {
+				if (rows[y] != 0) JTetris.drawBlocks(tile, rows[y], y, tileHeight, dX, dY);
+			}
+		}
+		tile.dispose();
+	}
+}
@@ -6,7 +6,11 @@ import javax.swing.event.ChangeListener;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 
 /**
@@ -21,6 +25,8 @@ import java.util.Random;
  * During animation, filled rows draw as green.
  * Clearing 1-4 rows scores 5, 10, 20, 40 points.
  * Clearing 4 rows at a time beeps!
+ * Run with -Dtetris.record=games.rpl to record every game
+ * (see tetris.ReplayWriter and tetris.ReplayPlayer).
  */
 
 /*
@@ -28,8 +34,12 @@ import java.util.Random;
  -The "currentPiece" points to a piece that is
  currently falling, or is null when there is no piece.
  -tick() moves the current piece
- -a timer object calls tick(DOWN) periodically
- -keystrokes call tick() with LEFT, RIGHT, etc.
+ -the game runs on its own thread, in fixed steps (tetris.GameLoop),
+ so all of the game state is only ever touched from there
+ -keystrokes queue up LEFT, RIGHT, etc. for the next step
+ -each step calls tick() with them, and tick(DOWN) periodically
+ -after the steps, a copy of what to draw (a Frame) goes
+ to paintComponent() on the Swing thread
  -tetris.Board.undo() is used to remove the piece from its
  old position and then tetris.Board.place() is used to install
  the piece in its new position.
@@ -51,19 +61,32 @@ public class JTetris extends JComponent {
 	public static final int DOWN = 4;
 	public final int TEST_LIMIT = 100;
 	public final int DELAY = 400;    // milliseconds per tick
+	// Steps of the game loop per second, in real time
+	public static final int STEPS_PER_SECOND = 60;
 	// When this is true, plays a fixed sequence of 100 pieces
 	protected boolean testMode = false;
-	// Is drawing optimized
-	// (default false, so debugging is easier)
-	protected boolean DRAW_OPTIMIZE = false;
+	// When this is true, games are played on a tetris.BitBoard
+	protected boolean bitBoardMode = false;
+	// Is drawing optimized -- repaint only what the board says changed
+	// (set false to repaint everything, so debugging is easier)
+	protected boolean DRAW_OPTIMIZE = true;
 	// tetris.Board data structures
 	protected Board board;
 	protected Piece[] pieces;
+	private static final long[] NO_ROWS = new long[0];
+	// The settled blocks -- the board without the current piece --
+	// drawn once and kept between frames (see paintComponent())
+	private BufferedImage boardImage;
+	private long[] imageRows = NO_ROWS;         // the rows drawn in boardImage
+	private final int[] dirty = new int[4];    // region from tetris.Board.takeDirty()
+	private boolean rowFilled;                 // last placement filled a row (drawn green)
 	// The current piece in play or null
 	protected Piece currentPiece;
 	protected int currentX;
 	protected int currentY;
 	protected boolean moved;    // did the player move the piece
+	// The piece that comes after the current one
+	protected Piece nextPiece;
 	// The piece we're thinking about playing
 	// -- set by computeNewPosition
 	// (storing this in ivars is slightly questionable style)
@@ -71,10 +94,16 @@ public class JTetris extends JComponent {
 	protected int newX;
 	protected int newY;
 	// State of the game
-	protected boolean gameOn;    // true if we are playing
+	protected volatile boolean gameOn;    // true if we are playing
 	protected int count;         // how many pieces played so far
 	protected long startTime;    // used to measure elapsed time
 	protected Random random;     // the random generator for new pieces
+	protected long seed;         // what random was seeded with
+	protected int rowsCleared;
+	// Replay recording, see setRecorder()
+	protected ReplayWriter recorder;
+	private ReplayWriter.Game recording;    // this game, or null
+	private Piece[] recordedPieces;         // the piece set it is for
 	// Controls
 	protected JLabel countLabel;
 	protected JLabel scoreLabel;
@@ -82,9 +111,16 @@ public class JTetris extends JComponent {
 	protected JLabel timeLabel;
 	protected JButton startButton;
 	protected JButton stopButton;
-	protected javax.swing.Timer timer;
+	protected GameLoop loop;
+	protected JCheckBox fastButton;
+	// Game loop state
+	private final ConcurrentLinkedQueue<Integer> inputs = new ConcurrentLinkedQueue<Integer>();
+	private volatile int dropSteps = 1;    // steps per tick(DOWN), from the speed slider
+	private int stepsSinceDrop;
+	protected volatile Frame frame;        // what paintComponent() draws
 	protected JSlider speed;
 	protected JCheckBox testButton;
+	protected JCheckBox bitBoardButton;
 
 
 	/**
@@ -101,13 +137,13 @@ public class JTetris extends JComponent {
 		gameOn = false;
 
 		pieces = Piece.getPieces();
-		board = new Board(WIDTH, HEIGHT + TOP_SPACE);
+		board = createBoard();
 
 
 		/*
-		 Register key handlers that call
-		 tick with the appropriate constant.
-		 e.g. 'j' and '4'  call tick(LEFT)
+		 Register key handlers that queue up
+		 the appropriate constant for tick.
+		 e.g. 'j' and '4'  call input(LEFT)
 
 		 I tried doing the arrow keys, but the JSliders
 		 try to use those too, causing problems.
@@ -117,14 +153,14 @@ public class JTetris extends JComponent {
 		registerKeyboardAction(
 				new ActionListener() {
 					public void actionPerformed(ActionEvent e) {
-						tick(LEFT);
+						input(LEFT);
 					}
 				}, "left", KeyStroke.getKeyStroke('4'), WHEN_IN_FOCUSED_WINDOW
 		);
 		registerKeyboardAction(
 				new ActionListener() {
 					public void actionPerformed(ActionEvent e) {
-						tick(LEFT);
+						input(LEFT);
 					}
 				}, "left", KeyStroke.getKeyStroke('j'), WHEN_IN_FOCUSED_WINDOW
 		);
@@ -134,14 +170,14 @@ public class JTetris extends JComponent {
 		registerKeyboardAction(
 				new ActionListener() {
 					public void actionPerformed(ActionEvent e) {
-						tick(RIGHT);
+						input(RIGHT);
 					}
 				}, "right", KeyStroke.getKeyStroke('6'), WHEN_IN_FOCUSED_WINDOW
 		);
 		registerKeyboardAction(
 				new ActionListener() {
 					public void actionPerformed(ActionEvent e) {
-						tick(RIGHT);
+						input(RIGHT);
 					}
 				}, "right", KeyStroke.getKeyStroke('l'), WHEN_IN_FOCUSED_WINDOW
 		);
@@ -151,14 +187,14 @@ public class JTetris extends JComponent {
 		registerKeyboardAction(
 				new ActionListener() {
 					public void actionPerformed(ActionEvent e) {
-						tick(ROTATE);
+						input(ROTATE);
 					}
 				}, "rotate", KeyStroke.getKeyStroke('5'), WHEN_IN_FOCUSED_WINDOW
 		);
 		registerKeyboardAction(
 				new ActionListener() {
 					public void actionPerformed(ActionEvent e) {
-						tick(ROTATE);
+						input(ROTATE);
 					}
 				}, "rotate", KeyStroke.getKeyStroke('k'), WHEN_IN_FOCUSED_WINDOW
 		);
@@ -168,26 +204,23 @@ public class JTetris extends JComponent {
 		registerKeyboardAction(
 				new ActionListener() {
 					public void actionPerformed(ActionEvent e) {
-						tick(DROP);
+						input(DROP);
 					}
 				}, "drop", KeyStroke.getKeyStroke('0'), WHEN_IN_FOCUSED_WINDOW
 		);
 		registerKeyboardAction(
 				new ActionListener() {
 					public void actionPerformed(ActionEvent e) {
-						tick(DROP);
+						input(DROP);
 					}
 				}, "drop", KeyStroke.getKeyStroke('n'), WHEN_IN_FOCUSED_WINDOW
 		);
 
 
-		// Create the Timer object and have it send
-		// tick(DOWN) periodically
-		timer = new javax.swing.Timer(DELAY, new ActionListener() {
-			public void actionPerformed(ActionEvent e) {
-				tick(DOWN);
-			}
-		});
+		// Create the game loop, running step() at a fixed rate
+		loop = new GameLoop("game", this::step, this::publishFrame);
+		loop.setRate(STEPS_PER_SECOND);
+		frame = new Frame(board, null, 0, 0, 0, 0);
 
 		requestFocusInWindow();
 	}
@@ -236,41 +269,89 @@ public class JTetris extends JComponent {
 			UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
 		} catch (Exception ignored) {
 		}
+		PieceRegistry.warmUp();
 
 		JTetris tetris = new JTetris(16);
+		tetris.setPieces(loadPieces(args));
+		recordIfAsked(tetris);
 		JFrame frame = JTetris.createFrame(tetris);
 		frame.setVisible(true);
 	}
 
 	/**
-	 * Sets the internal state and starts the timer
+	 * Returns the piece set in the file named by args[0],
+	 * or the standard pieces if there is none.
+	 */
+	static Piece[] loadPieces(String[] args) {
+		if (args.length == 0) return Piece.getPieces();
+		try {
+			return PieceLoader.load(Paths.get(args[0]));
+		} catch (IOException e) {
+			throw new RuntimeException("Could not load pieces from " + args[0], e);
+		}
+	}
+
+	/**
+	 * Plays with the given piece set instead of the standard
+	 * one, e.g. one from tetris.PieceLoader. Takes effect
+	 * with the next piece.
+	 */
+	public void setPieces(Piece[] pieces) {
+		this.pieces = pieces;
+	}
+
+	/**
+	 * Sets the internal state and starts the game loop
 	 * so the game is happening.
 	 */
 	public void startGame() {
+		// Let the last game finish its step first
+		loop.stop();
+
+		// Pick the board engine based on checkbox at start of game
+		bitBoardMode = bitBoardButton.isSelected();
+
 		// cheap way to reset the board state
-		board = new Board(WIDTH, HEIGHT + TOP_SPACE);
+		board = createBoard();
 
 		// draw the new board state once
 		repaint();
 
 		count = 0;
 		score = 0;
-		updateCounters();
+		nextPiece = null;
+		inputs.clear();
+		stepsSinceDrop = 0;
 		gameOn = true;
 
 		// Set mode based on checkbox at start of game
 		testMode = testButton.isSelected();
 
-		if (testMode) random = new Random(0);    // same seq every time
-		else random = new Random(); // diff seq each game
+		if (testMode) seed = 0;    // same seq every time
+		else seed = new Random().nextLong(); // diff seq each game
+		random = new Random(seed);
+		rowsCleared = 0;
+
+		recordedPieces = pieces;
+		if (recorder != null) recording = recorder.startGame(seed, board.getWidth(), board.getHeight(), pieces);
 
 		enableButtons();
 		timeLabel.setText(" ");
 		addNewPiece();
-		timer.start();
+		publishFrame();
+		loop.start();
 		startTime = System.currentTimeMillis();
 	}
 
+	/**
+	 * Creates an empty board for a new game, using the
+	 * tetris.BitBoard engine if bitBoardMode is set.
+	 */
+	protected Board createBoard() {
+		if (bitBoardMode) return new BitBoard(WIDTH, HEIGHT + TOP_SPACE);
+		return new Board(WIDTH, HEIGHT + TOP_SPACE);
+	}
+
 	/**
 	 * Sets the enabling of the start/stop buttons
 	 * based on the gameOn state.
@@ -281,22 +362,150 @@ public class JTetris extends JComponent {
 	}
 
 	/**
-	 * Stops the game.
+	 * Stops the game. Called from a step when the game is over, or
+	 * from the Swing thread, which then waits for the step to finish.
 	 */
 	public void stopGame() {
 		gameOn = false;
-		enableButtons();
-		timer.stop();
+		loop.stop();
+		endRecording();
+
+		final long delta = (System.currentTimeMillis() - startTime) / 10;
+		onSwingThread(() -> {
+			enableButtons();
+			timeLabel.setText(Double.toString(delta / 100.0) + " seconds");
+		});
+	}
+
+	/**
+	 * Records every game from the next one on to the given replay
+	 * file, or stops recording if it is null. See tetris.ReplayWriter.
+	 */
+	public void setRecorder(ReplayWriter recorder) {
+		this.recorder = recorder;
+	}
+
+	/**
+	 * Records games to the replay file named by the tetris.record
+	 * system property (-Dtetris.record=games.rpl), if it is set.
+	 */
+	static void recordIfAsked(JTetris tetris) {
+		String file = System.getProperty("tetris.record");
+		if (file == null) return;
+		try {
+			tetris.setRecorder(new ReplayWriter(Paths.get(file)));
+		} catch (IOException e) {
+			throw new RuntimeException("Could not record to " + file, e);
+		}
+	}
+
+	// Ends the recording of this game, if there is one, and writes it out
+	private void endRecording() {
+		if (recording == null) return;
+		recording.end(count, score, rowsCleared);
+		recording = null;
+		try {
+			recorder.flush();
+		} catch (IOException e) {
+			throw new RuntimeException("Could not write replay", e);
+		}
+	}
+
+	// Runs the given code on the Swing thread -- right now if this is it
+	private static void onSwingThread(Runnable code) {
+		if (SwingUtilities.isEventDispatchThread()) code.run();
+		else SwingUtilities.invokeLater(code);
+	}
+
+	/**
+	 * Queues up a verb (LEFT, RIGHT, ...) for the next step
+	 * of the game loop. Can be called from any thread.
+	 */
+	public void input(int verb) {
+		if (gameOn) inputs.add(verb);
+	}
+
+	/**
+	 * One fixed step of the game loop: tick() with the verbs queued up
+	 * since the last step, then tick(DOWN) once every dropSteps steps.
+	 * Called on the loop thread only.
+	 */
+	protected void step() {
+		Integer verb;
+		while ((verb = inputs.poll()) != null) tick(verb);
+
+		if (++stepsSinceDrop >= dropSteps) {
+			stepsSinceDrop = 0;
+			tick(DOWN);
+		}
+	}
 
-		long delta = (System.currentTimeMillis() - startTime) / 10;
-		timeLabel.setText(Double.toString(delta / 100.0) + " seconds");
+	/**
+	 * Makes a new frame of the game as it is now for paintComponent(),
+	 * then asks for a repaint of what changed since the last one.
+	 * Called by the game loop after its steps, at most
+	 * tetris.GameLoop.MAX_FPS times per second.
+	 */
+	protected void publishFrame() {
+		// Once the game is over, whatever is on the board is settled
+		Piece piece = gameOn ? currentPiece : null;
+		final Frame f = new Frame(board, piece, currentX, currentY, count, score);
+		frame = f;
+
+		// Rows turning green when filled, or back, change
+		// color all the way across, so then take whole rows.
+		repaintDirty(f.filled || rowFilled);
+		rowFilled = f.filled;
+
+		SwingUtilities.invokeLater(() -> updateCounters(f.count, f.score));
+	}
 
+	/**
+	 * The game as of one step of the game loop, the way paintComponent()
+	 * draws it: the settled rows -- the board without the current
+	 * piece -- and the current piece, if there is one. Never changed
+	 * once made, so the loop can go on while the Swing thread draws it.
+	 */
+	protected static class Frame {
+		final int width;
+		final int height;
+		final long[] rows;
+		final Piece piece;       // null for none
+		final int x;
+		final int y;
+		final boolean filled;    // the piece fills a row
+		final int count;
+		final int score;
+
+		Frame(Board board, Piece piece, int x, int y, int count, int score) {
+			this.width = board.getWidth();
+			this.height = board.getHeight();
+			this.piece = piece;
+			this.x = x;
+			this.y = y;
+			this.count = count;
+			this.score = score;
+
+			rows = new long[height];
+			board.copyRows(0, height, rows, 0);
+
+			final long fullRow = (width == 64) ? -1L : (1L << width) - 1;
+			boolean full = false;
+			long[] pieceRows = (piece != null) ? piece.getRowMasks() : NO_ROWS;
+			for (int i = 0; i < pieceRows.length; i++) {
+				long row = pieceRows[i] << x;
+				rows[y + i] &= ~row;
+				full |= ((rows[y + i] | row) == fullRow);
+			}
+			filled = full;
+		}
 	}
 
 	/**
 	 * Given a piece, tries to install that piece
 	 * into the board and set it to be the current piece.
-	 * Does the necessary repaints.
+	 * The board notes the blocks that change, and
+	 * the next publishFrame() repaints them.
 	 * If the placement is not possible, then the placement
 	 * is undone, and the board is not changed. The board
 	 * should be in the committed state when this is called.
@@ -306,13 +515,9 @@ public class JTetris extends JComponent {
 		int result = board.place(piece, x, y);
 
 		if (result <= Board.PLACE_ROW_FILLED) { // SUCESS
-			// repaint the rect where it used to be
-			if (currentPiece != null) repaintPiece(currentPiece, currentX, currentY);
 			currentPiece = piece;
 			currentX = x;
 			currentY = y;
-			// repaint the rect where it is now
-			repaintPiece(currentPiece, currentX, currentY);
 		} else {
 			board.undo();
 		}
@@ -334,6 +539,16 @@ public class JTetris extends JComponent {
 		return (piece);
 	}
 
+	/**
+	 * Whether addNewPiece() picks the piece after the current one
+	 * ahead of time. Subclasses whose pickNextPiece() looks at the
+	 * board return false while it does, so every piece is picked as
+	 * it spawns, on the board it will really land on.
+	 */
+	protected boolean queueNextPiece() {
+		return true;
+	}
+
 	/**
 	 * Tries to add a new random piece at the top of the board.
 	 * Ends the game if it's not possible.
@@ -343,6 +558,10 @@ public class JTetris extends JComponent {
 		score++;
 
 		if (testMode && count == TEST_LIMIT + 1) {
+			// that piece never gets played
+			count--;
+			score--;
+			currentPiece = null;
 			stopGame();
 			return;
 		}
@@ -351,7 +570,10 @@ public class JTetris extends JComponent {
 		board.commit();
 		currentPiece = null;
 
-		Piece piece = pickNextPiece();
+		// Take the queued piece, and queue the one after it
+		// so brains and players can see it coming.
+		Piece piece = (nextPiece != null) ? nextPiece : pickNextPiece();
+		nextPiece = queueNextPiece() ? pickNextPiece() : null;
 
 		// Center it up at the top
 		int px = (board.getWidth() - piece.getWidth()) / 2;
@@ -366,14 +588,12 @@ public class JTetris extends JComponent {
 		if (result > Board.PLACE_ROW_FILLED) {
 			stopGame();
 		}
-
-		updateCounters();
 	}
 
 	/**
-	 * Updates the count/score labels with the latest values.
+	 * Updates the count/score labels with the given values.
 	 */
-	private void updateCounters() {
+	private void updateCounters(int count, int score) {
 		countLabel.setText("Pieces " + count);
 		scoreLabel.setText("Score " + score);
 	}
@@ -443,7 +663,7 @@ public class JTetris extends JComponent {
 	 These centralize the translation of (x,y) coords
 	 that refer to blocks in the board to (x,y) coords that
 	 count pixels. Centralizing these computations here
-	 is the only prayer that repaintPiece() and paintComponent()
+	 is the only prayer that repaintDirty() and paintComponent()
 	 will be consistent.
 	 
 	 The +1's and -2's are to account for the 1 pixel
@@ -454,7 +674,7 @@ public class JTetris extends JComponent {
 	 * Called to change the position of the current piece.
 	 * Each key press calls this once with the verbs
 	 * LEFT RIGHT ROTATE DROP for the user moves,
-	 * and the timer calls it with the verb DOWN to move
+	 * and the game loop calls it with the verb DOWN to move
 	 * the piece down one square.
 	 * <p>
 	 * Before this is called, the piece is at some location in the board.
@@ -475,19 +695,11 @@ public class JTetris extends JComponent {
 		// try out the new position (rolls back if it doesn't work)
 		int result = setCurrent(newPiece, newX, newY);
 
-		// if row clearing is going to happen, draw the
-		// whole board so the green row shows up
-		if (result == Board.PLACE_ROW_FILLED) {
-			repaint();
-		}
-
-
 		boolean failed = (result >= Board.PLACE_OUT_BOUNDS);
 
 		// if it didn't work, put it back the way it was
 		if (failed) {
 			if (currentPiece != null) board.place(currentPiece, currentX, currentY);
-			repaintPiece(currentPiece, currentX, currentY);
 		}
 
 		/*
@@ -498,30 +710,23 @@ public class JTetris extends JComponent {
 		 "landed" position, so we're done with the falling of this piece.
 		*/
 		if (failed && verb == DOWN && !moved) {    // it's landed
+			if (recording != null) {
+				// a new piece set comes in with new pieces, and can't be recorded
+				if (pieces == recordedPieces) recording.piece(currentPiece, currentX, currentY);
+				else recording = null;
+			}
+
+			// It is part of the board now -- and once the rows
+			// shift, its old place means nothing.
+			currentPiece = null;
 
 			int cleared = board.clearRows();
+			rowsCleared += cleared;
 			if (cleared > 0) {
 				// score goes up by 5, 10, 20, 40 for row clearing
 				// clearing 4 gets you a beep!
-				switch (cleared) {
-					case 1:
-						score += 5;
-						break;
-					case 2:
-						score += 10;
-						break;
-					case 3:
-						score += 20;
-						break;
-					case 4:
-						score += 40;
-						Toolkit.getDefaultToolkit().beep();
-						break;
-					default:
-						score += 50;  // could happen with non-standard pieces
-				}
-				updateCounters();
-				repaint();    // repaint to show the result of the row clearing
+				score += GameEngine.rowScore(cleared);
+				if (cleared == 4) Toolkit.getDefaultToolkit().beep();
 			}
 
 
@@ -541,42 +746,51 @@ public class JTetris extends JComponent {
 	}
 
 	/**
-	 * Given a piece and a position for the piece, generates
-	 * a repaint for the rectangle that just encloses the piece.
+	 * Repaints the blocks the board says changed since the last
+	 * call -- across the whole width if fullRows is set.
 	 */
-	public void repaintPiece(Piece piece, int x, int y) {
-		if (DRAW_OPTIMIZE) {
-			int px = xPixel(x);
-			int py = yPixel(y + piece.getHeight() - 1);
-			int pwidth = xPixel(x + piece.getWidth()) - px;
-			int pheight = yPixel(y - 1) - py;
-
-			repaint(px, py, pwidth, pheight);
-		} else {
-			// Not-optimized -- rather than repaint
-			// just the piece rect, repaint the whole board.
+	protected void repaintDirty(boolean fullRows) {
+		if (!board.takeDirty(dirty)) return;
+		if (!DRAW_OPTIMIZE) {
 			repaint();
+			return;
 		}
+
+		int minX = fullRows ? 0 : dirty[0];
+		int maxX = fullRows ? board.getWidth() - 1 : dirty[2];
+		int px = xPixel(minX);
+		int py = yPixel(dirty[3]);
+		repaint(px, py, xPixel(maxX + 1) - px, yPixel(dirty[1] - 1) - py);
 	}
 
 	// width in pixels of a block
 	private final float dX() {
-		return (((float) (getWidth() - 2)) / board.getWidth());
+		return (((float) (getWidth() - 2)) / frame.width);
 	}
 
 	// height in pixels of a block
 	private final float dY() {
-		return (((float) (getHeight() - 2)) / board.getHeight());
+		return (((float) (getHeight() - 2)) / frame.height);
 	}
 
 	// the x pixel coord of the left side of a block
 	private final int xPixel(int x) {
-		return (Math.round(1 + (x * dX())));
+		return xPixel(x, dX());
 	}
 
 	// the y pixel coord of the top of a block
 	private final int yPixel(int y) {
-		return (Math.round(getHeight() - 1 - (y + 1) * dY()));
+		return yPixel(y, getHeight(), dY());
+	}
+
+	// The same two for any board drawn in an area height pixels
+	// tall, with blocks dX by dY pixels (see tetris.JSpectator)
+	static int xPixel(int x, float dX) {
+		return (Math.round(1 + (x * dX)));
+	}
+
+	static int yPixel(int y, int height, float dY) {
+		return (Math.round(height - 1 - (y + 1) * dY));
 	}
 
 	/**
@@ -584,67 +798,110 @@ public class JTetris extends JComponent {
 	 * around the whole thing. Uses the pixel helpers
 	 * above to map board coords to pixel coords.
 	 * Draws rows that are filled all the way across in green.
+	 * <p>
+	 * The settled blocks come from boardImage, which only changes
+	 * when they do (a piece lands, rows clear), so a frame costs
+	 * the same however full the board is. The current piece,
+	 * and any row it fills, is drawn on top.
 	 */
 	public void paintComponent(Graphics g) {
+		final Frame f = frame;
 
 		// Draw a rect around the whole thing
 		g.drawRect(0, 0, getWidth() - 1, getHeight() - 1);
 
 
 		// Draw the line separating the top
-		int spacerY = yPixel(board.getHeight() - TOP_SPACE - 1);
+		int spacerY = yPixel(f.height - TOP_SPACE - 1);
 		g.drawLine(0, spacerY, getWidth() - 1, spacerY);
 
 
-		// check if we are drawing with clipping
-		//Shape shape = g.getClip();
-		Rectangle clip = null;
-		if (DRAW_OPTIMIZE) {
-			clip = g.getClipBounds();
+		// Factor a few things out to help the optimizer
+		final float blockWidth = dX();
+		final float blockHeight = dY();
+		final long fullRow = (f.width == 64) ? -1L : (1L << f.width) - 1;
+
+		updateBoardImage(f.rows, g.getColor(), blockWidth, blockHeight);
+		g.drawImage(boardImage, 0, 0, null);
+
+		// Then the current piece, bottom-top -- all of the row if it fills it
+		long[] pieceRows = (f.piece != null) ? f.piece.getRowMasks() : NO_ROWS;
+		for (int i = 0; i < pieceRows.length; i++) {
+			int y = f.y + i;
+			long row = pieceRows[i] << f.x;
+			boolean filled = ((f.rows[y] | row) == fullRow);
+			if (filled) g.setColor(Color.green);
+
+			drawBlocks(g, filled ? fullRow : row, y, getHeight(), blockWidth, blockHeight);
+
+			if (filled) g.setColor(Color.black);
 		}
+	}
 
+	/**
+	 * Brings boardImage up to date with the given settled rows,
+	 * redrawing only the rows that changed since the last call.
+	 * Starts a new, blank image when the component or board
+	 * changes size.
+	 */
+	private void updateBoardImage(long[] rows, Color color, float blockWidth, float blockHeight) {
+		final int bHeight = rows.length;
+		if (boardImage == null || boardImage.getWidth() != getWidth()
+				|| boardImage.getHeight() != getHeight() || imageRows.length != bHeight) {
+			boardImage = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_ARGB);
+			imageRows = new long[bHeight];    // all empty, like the image
+		}
 
-		// Factor a few things out to help the optimizer
-		final int dx = Math.round(dX() - 2);
-		final int dy = Math.round(dY() - 2);
-		final int bWidth = board.getWidth();
-
-		int x, y;
-		// Loop through and draw all the blocks
-		// left-right, bottom-top
-		for (x = 0; x < bWidth; x++) {
-			int left = xPixel(x);    // the left pixel
-
-			// right pixel (useful for clip optimization)
-			int right = xPixel(x + 1) - 1;
-
-			// skip this x if it is outside the clip rect
-			if (DRAW_OPTIMIZE && clip != null) {
-				if ((right < clip.x) || (left >= (clip.x + clip.width))) continue;
+		Graphics2D g = null;
+		for (int y = 0; y < bHeight; y++) {
+			if (rows[y] == imageRows[y]) continue;
+			if (g == null) {
+				g = boardImage.createGraphics();
+				g.setColor(color);
 			}
 
-			// draw from 0 up to the col height
-			final int yHeight = board.getColumnHeight(x);
-			for (y = 0; y < yHeight; y++) {
-				if (board.getGrid(x, y)) {
-					boolean filled = (board.getRowWidth(y) == bWidth);
-					if (filled) g.setColor(Color.green);
+			// wipe the row back to transparent, then draw it again
+			int top = yPixel(y);
+			g.setComposite(AlphaComposite.Clear);
+			g.fillRect(0, top, getWidth(), yPixel(y - 1) - top);
+			g.setComposite(AlphaComposite.SrcOver);
+			drawBlocks(g, rows[y], y, getHeight(), blockWidth, blockHeight);
 
-					g.fillRect(left + 1, yPixel(y) + 1, dx, dy);    // +1 to leave a white border
+			imageRows[y] = rows[y];
+		}
+		if (g != null) g.dispose();
+	}
 
-					if (filled) g.setColor(Color.black);
-				}
-			}
+	// Draws the blocks set in the bitmask as row y of a board
+	// drawn in an area height pixels tall, like xPixel()/yPixel()
+	static void drawBlocks(Graphics g, long row, int y, int height, float dX, float dY) {
+		final int dx = Math.round(dX - 2);
+		final int dy = Math.round(dY - 2);
+		int top = yPixel(y, height, dY) + 1;
+		while (row != 0) {
+			int x = Long.numberOfTrailingZeros(row);
+			g.fillRect(xPixel(x, dX) + 1, top, dx, dy);    // +1 to leave a white border
+			row &= row - 1;
 		}
 	}
 
 	/**
-	 * Updates the timer to reflect the current setting of the
-	 * speed slider.
+	 * Updates how many steps of the game loop go by between
+	 * tick(DOWN)s, to reflect the current setting of the speed slider.
 	 */
 	public void updateTimer() {
 		double value = ((double) speed.getValue()) / speed.getMaximum();
-		timer.setDelay((int) (DELAY - value * DELAY));
+		int delay = (int) (DELAY - value * DELAY);
+		dropSteps = Math.max(1, Math.round(delay * STEPS_PER_SECOND / 1000.0f));
+	}
+
+	/**
+	 * Returns the time between tick(DOWN)s in real time, in
+	 * nanoseconds, or 0 when the game loop runs flat out.
+	 */
+	protected long dropNanos() {
+		double rate = loop.getRate();
+		return (rate > 0) ? (long) (dropSteps * 1e9 / rate) : 0;
 	}
 
 	/**
@@ -702,7 +959,7 @@ public class JTetris extends JComponent {
 
 		panel.add(row);
 		speed.addChangeListener(new ChangeListener() {
-			// when the slider changes, sync the timer to its value
+			// when the slider changes, sync the drop rate to its value
 			public void stateChanged(ChangeEvent e) {
 				updateTimer();
 			}
@@ -711,6 +968,18 @@ public class JTetris extends JComponent {
 		testButton = new JCheckBox("Test sequence");
 		panel.add(testButton);
 
+		bitBoardButton = new JCheckBox("Bitboard engine");
+		panel.add(bitBoardButton);
+
+		// Run the game loop as fast as it goes, e.g. to try out brains
+		fastButton = new JCheckBox("Fast forward");
+		panel.add(fastButton);
+		fastButton.addChangeListener(new ChangeListener() {
+			public void stateChanged(ChangeEvent e) {
+				loop.setRate(fastButton.isSelected() ? 0 : STEPS_PER_SECOND);
+			}
+		});
+
 
 		return panel;
 	}
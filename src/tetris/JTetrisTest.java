@@ -0,0 +1,91 @@
+package tetris;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/*
+  Unit test for the game logic of tetris.JTetris -- no window,
+  the steps are run by hand instead of by the game loop.
+ */
+public class JTetrisTest {
+	private JTetris tetris;
+	private Piece dot;
+	private Piece stick;
+
+	@Before
+	public void setUp() {
+		tetris = new JTetris(16);
+		tetris.createControlPanel();
+		dot = new Piece("0 0");
+		stick = new Piece(Piece.STICK_STR);
+	}
+
+	// Row 0 filled but for the right column, plus the given column
+	// height on the left, and a stick falling into the gap that
+	// lands on the next DOWN.
+	private void setUpLanding(int leftHeight) {
+		Board board = tetris.board;
+		for (int x = 0; x < board.getWidth() - 1; x++) {
+			board.place(dot, x, 0);
+			board.commit();
+		}
+		for (int y = 1; y < leftHeight; y++) {
+			board.place(dot, 0, y);
+			board.commit();
+		}
+		tetris.gameOn = true;
+		tetris.moved = false;
+		assertEquals(Board.PLACE_ROW_FILLED, tetris.setCurrent(stick, board.getWidth() - 1, 0));
+	}
+
+	// The frame the game ends on must show the board as it is
+	private void checkLastFrame() {
+		assertFalse(tetris.gameOn);
+
+		Board board = tetris.board;
+		tetris.publishFrame();
+		JTetris.Frame frame = tetris.frame;
+		assertNull(frame.piece);
+		for (int y = 0; y < board.getHeight(); y++) {
+			assertEquals(board.getRowMask(y), frame.rows[y]);
+		}
+	}
+
+	// The test sequence ends right after a piece clears a row
+	@Test
+	public void testEndAfterClear() {
+		setUpLanding(2);
+		tetris.testMode = true;
+		tetris.count = tetris.TEST_LIMIT;
+		tetris.tick(JTetris.DOWN);
+
+		assertEquals(0b1000000001, tetris.board.getRowMask(0));
+		assertEquals(tetris.TEST_LIMIT, tetris.count);
+		assertNull(tetris.currentPiece);
+		checkLastFrame();
+	}
+
+	// Stopped before the piece lands, it is drawn as part of the board
+	@Test
+	public void testStopWhileFalling() {
+		setUpLanding(2);
+		tetris.stopGame();
+		checkLastFrame();
+		assertEquals(1L << 9, tetris.frame.rows[3]);
+	}
+
+	// The board is still too tall after the clear
+	@Test
+	public void testGameOverAfterClear() {
+		setUpLanding(JTetris.HEIGHT + 2);
+		tetris.tick(JTetris.DOWN);
+
+		assertEquals(JTetris.HEIGHT + 1, tetris.board.getMaxHeight());
+		assertNull(tetris.currentPiece);
+		checkLastFrame();
+	}
+}
@@ -0,0 +1,256 @@
+package tetris;// tetris.LookaheadBrain.java
+
+import java.util.Arrays;
+
+/**
+ * A tetris.DefaultBrain that also plans for the next piece. Every
+ * placement of the current piece is rated like tetris.DefaultBrain
+ * does, then the best beamWidth of them are tried again with the best
+ * placement of the next piece on top, and the pair with the best final
+ * rating wins. Without a next piece it plays just like tetris.DefaultBrain.
+ * <p>
+ * Two things keep each decision fast enough for real time play:
+ * <ul>
+ * <li>placements of the current piece are expanded best first and
+ * skipped when they can't beat the best pair found so far (see
+ * lowerBound()), which changes nothing about the result, and</li>
+ * <li>once the time budget is used up, no more placements are
+ * expanded and the best pair so far is played.</li>
+ * </ul>
+ * All the work happens on the given board with mark() and rollbackTo(),
+ * so nothing is allocated per decision once the candidate arrays have
+ * grown to fit the board. Like tetris.DefaultBrain, not thread-safe.
+ */
+public class LookaheadBrain extends DefaultBrain {
+	public static final int DEFAULT_BEAM_WIDTH = 10;
+	public static final long DEFAULT_BUDGET_NANOS = 20_000_000L;    // 20 ms
+
+	private int beamWidth;
+	private long budgetNanos;
+
+	// Placements of the current piece, reused between calls.
+	private Piece[] pieces = new Piece[0];
+	private int[] xs = new int[0];
+	private int[] ys = new int[0];
+	private double[] scores = new double[0];
+	private int[] order = new int[0];
+	private Brain.Move reply = new Brain.Move();
+
+	// Stats of the last bestMove() call
+	private int expanded;
+	private int pruned;
+	private boolean outOfTime;
+
+
+	/**
+	 * Creates a brain with the default beam width and time budget.
+	 */
+	public LookaheadBrain() {
+		this(DEFAULT_BEAM_WIDTH, DEFAULT_BUDGET_NANOS);
+	}
+
+
+	/**
+	 * Creates a brain that looks at most beamWidth placements of the
+	 * current piece ahead, and stops expanding more of them after
+	 * budgetNanos nanoseconds.
+	 */
+	public LookaheadBrain(int beamWidth, long budgetNanos) {
+		setBeamWidth(beamWidth);
+		setBudgetNanos(budgetNanos);
+	}
+
+
+	/**
+	 * Sets how many placements of the current piece are looked ahead from.
+	 */
+	public void setBeamWidth(int beamWidth) {
+		if (beamWidth < 1) throw new RuntimeException("Beam width must be at least 1");
+		this.beamWidth = beamWidth;
+	}
+
+
+	/**
+	 * Sets how long a decision may take, in nanoseconds. The best
+	 * placement of the current piece is always looked ahead from,
+	 * however small the budget.
+	 */
+	public void setBudgetNanos(long budgetNanos) {
+		this.budgetNanos = budgetNanos;
+	}
+
+
+	/**
+	 * Without a next piece, there is nothing to look ahead to.
+	 */
+	@Override
+	public Brain.Move bestMove(Board board, Piece piece, Piece nextPiece, int limitHeight, Brain.Move move) {
+		if (nextPiece == null) return bestMove(board, piece, limitHeight, move);
+		long deadline = System.nanoTime() + budgetNanos;
+
+		expanded = 0;
+		pruned = 0;
+		outOfTime = false;
+
+		board.commit();
+		int count = collect(board, piece, limitHeight);
+		if (count == 0) return null;    // could not find a play at all!
+
+		double bestScore = Double.POSITIVE_INFINITY;
+		int best = -1;
+		for (int i = 0; i < count && i < beamWidth; i++) {
+			if (i > 0 && System.nanoTime() - deadline > 0) {
+				outOfTime = true;
+				break;
+			}
+
+			int c = order[i];
+			int root = board.mark();
+			if (board.place(pieces[c], xs[c], ys[c]) == Board.PLACE_ROW_FILLED) board.clearRows();
+
+			if (lowerBound(board, nextPiece, scores[c]) >= bestScore) {
+				pruned++;
+			} else {
+				expanded++;
+				board.mark();
+				Brain.Move next = super.bestMove(board, nextPiece, limitHeight, reply);
+				// If the next piece has nowhere to go, this is as bad as it gets.
+				double score = (next != null) ? next.score : 1e20;
+				if (best < 0 || score < bestScore) {
+					bestScore = score;
+					best = c;
+				}
+			}
+			board.rollbackTo(root);
+		}
+
+		if (move == null) move = new Brain.Move();
+		move.x = xs[best];
+		move.y = ys[best];
+		move.piece = pieces[best];
+		move.score = bestScore;
+		return move;
+	}
+
+
+	/**
+	 * Returns a score that no placement of nextPiece on the given board
+	 * can beat, given that the board itself scores score.
+	 * <p>
+	 * tetris.DefaultBrain.rateBoard() never gets better when blocks are
+	 * added -- heights and holes only grow -- unless some rows get
+	 * cleared. A row can only be finished by nextPiece if it has no
+	 * more gaps than the piece has blocks in one row, and none of them
+	 * are holes under a column's top block. If no row is like that,
+	 * score itself is the bound. Brains whose rateBoard() can improve
+	 * as blocks are added should override this to return
+	 * Double.NEGATIVE_INFINITY.
+	 */
+	protected double lowerBound(Board board, Piece nextPiece, double score) {
+		// Most blocks the piece puts in a single row, over all rotations.
+		int blocks = 0;
+		Piece current = nextPiece;
+		do {
+			for (long mask : current.getRowMasks()) blocks = Math.max(blocks, Long.bitCount(mask));
+			current = current.fastRotation();
+		} while (current != nextPiece);
+
+		// Empty rows (all the ones above maxHeight) can only be
+		// finished if the board is no wider than that.
+		if (board.getWidth() <= blocks) return Double.NEGATIVE_INFINITY;
+
+		for (int y = 0; y < board.getMaxHeight(); y++) {
+			if (board.getWidth() - board.getRowWidth(y) > blocks) continue;
+
+			boolean open = true;
+			for (int x = 0; x < board.getWidth() && open; x++) {
+				if (!board.getGrid(x, y) && board.getColumnHeight(x) > y) open = false;
+			}
+			if (open) return Double.NEGATIVE_INFINITY;
+		}
+		return score;
+	}
+
+
+	/**
+	 * Rates every placement of piece into the candidate arrays and
+	 * sorts order[] best first, keeping the enumeration order among
+	 * equal scores. Returns the number of placements.
+	 */
+	private int collect(Board board, Piece piece, int limitHeight) {
+		int count = 0;
+		Piece current = piece;
+		do {
+			final int yBound = limitHeight - current.getHeight() + 1;
+			final int xBound = board.getWidth() - current.getWidth() + 1;
+
+			for (int x = 0; x < xBound; x++) {
+				int y = board.dropHeight(current, x);
+				if (y < yBound) {    // piece does not stick up too far
+					int result = board.place(current, x, y);
+					if (result <= Board.PLACE_ROW_FILLED) {
+						if (result == Board.PLACE_ROW_FILLED) board.clearRows();
+						grow(count + 1);
+						pieces[count] = current;
+						xs[count] = x;
+						ys[count] = y;
+						scores[count] = evaluate(board);
+						count++;
+					}
+					board.undo();
+				}
+			}
+			current = current.fastRotation();
+		} while (current != piece);
+
+		// Insertion sort -- there are only a few dozen, and it is stable.
+		for (int i = 0; i < count; i++) {
+			int c = i;
+			int j = i;
+			while (j > 0 && scores[order[j - 1]] > scores[c]) {
+				order[j] = order[j - 1];
+				j--;
+			}
+			order[j] = c;
+		}
+		return count;
+	}
+
+
+	private void grow(int size) {
+		if (size <= xs.length) return;
+		int length = Math.max(size, 2 * xs.length);
+		pieces = Arrays.copyOf(pieces, length);
+		xs = Arrays.copyOf(xs, length);
+		ys = Arrays.copyOf(ys, length);
+		scores = Arrays.copyOf(scores, length);
+		order = Arrays.copyOf(order, length);
+	}
+
+
+	/**
+	 * Returns how many placements of the current piece the
+	 * last bestMove() looked ahead from.
+	 */
+	public int getExpanded() {
+		return expanded;
+	}
+
+
+	/**
+	 * Returns how many placements the last bestMove()
+	 * skipped because they could not win.
+	 */
+	public int getPruned() {
+		return pruned;
+	}
+
+
+	/**
+	 * Returns true if the last bestMove() ran out of time
+	 * before it had looked at the whole beam.
+	 */
+	public boolean wasOutOfTime() {
+		return outOfTime;
+	}
+}
@@ -0,0 +1,118 @@
+package tetris;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/*
+  Unit test for tetris.LookaheadBrain.
+ */
+public class LookaheadBrainTest {
+	private static final int LIMIT = JTetris.HEIGHT;
+	private static final int WIDE = 100;    // wider than any beam
+	private Piece[] pieces;
+
+	@Before
+	public void setUp() {
+		pieces = Piece.getPieces();
+	}
+
+	// Boards from the middle of a seeded game
+	private Board position(long seed, int moves) {
+		GameEngine game = new GameEngine(seed);
+		game.setPieceLimit(moves);
+		game.play(new DefaultBrain());
+		return game.getBoard();
+	}
+
+	// Every pair of placements, the slow way.
+	private double exhaustive(Board board, Piece piece, Piece next) {
+		DefaultBrain brain = new DefaultBrain();
+		double best = Double.POSITIVE_INFINITY;
+		Piece current = piece;
+		do {
+			for (int x = 0; x + current.getWidth() <= board.getWidth(); x++) {
+				int y = board.dropHeight(current, x);
+				if (y >= LIMIT - current.getHeight() + 1) continue;
+
+				Board copy = board.copy();
+				if (copy.place(current, x, y) == Board.PLACE_ROW_FILLED) copy.clearRows();
+				copy.commit();
+				Brain.Move reply = brain.bestMove(copy, next, LIMIT, null);
+				best = Math.min(best, (reply != null) ? reply.score : 1e20);
+			}
+			current = current.fastRotation();
+		} while (current != piece);
+		return best;
+	}
+
+	// With an unlimited beam, the bound only skips what can't win.
+	@Test
+	public void testExhaustive() {
+		LookaheadBrain brain = new LookaheadBrain(Integer.MAX_VALUE, Long.MAX_VALUE / 2);
+		int pruned = 0;
+		for (long seed = 0; seed < 10; seed++) {
+			Board board = position(seed, 15);
+			for (Piece piece : pieces) {
+				Piece next = pieces[(int) (seed % pieces.length)];
+				Brain.Move move = brain.bestMove(board, piece, next, LIMIT, null);
+				assertNotNull(move);
+				assertEquals(exhaustive(board, piece, next), move.score, 1e-9);
+				assertFalse(brain.wasOutOfTime());
+				pruned += brain.getPruned();
+			}
+		}
+		assertTrue(pruned > 0);
+	}
+
+	// No next piece, or no time at all, plays like tetris.DefaultBrain.
+	@Test
+	public void testFallback() {
+		Board board = position(3, 20);
+		DefaultBrain plain = new DefaultBrain();
+		LookaheadBrain brain = new LookaheadBrain(WIDE, 0);
+		for (Piece piece : pieces) {
+			Brain.Move expected = plain.bestMove(board, piece, LIMIT, null);
+
+			Brain.Move move = brain.bestMove(board, piece, null, LIMIT, null);
+			assertSame(expected.piece, move.piece);
+			assertEquals(expected.x, move.x);
+
+			move = brain.bestMove(board, piece, pieces[0], LIMIT, null);
+			assertSame(expected.piece, move.piece);
+			assertEquals(expected.x, move.x);
+			assertEquals(1, brain.getExpanded());
+		}
+	}
+
+	// The board is left just as it was.
+	@Test
+	public void testBoardUntouched() {
+		Board board = position(5, 25);
+		String before = board.toString();
+		long hash = board.getHash();
+		new LookaheadBrain().bestMove(board, pieces[0], pieces[1], LIMIT, null);
+
+		assertEquals(before, board.toString());
+		assertEquals(hash, board.getHash());
+		board.sanityCheck();
+	}
+
+	// Playing with the preview does not lose to playing without it.
+	@Test
+	public void testGame() {
+		GameEngine plain = new GameEngine(11);
+		GameEngine ahead = new GameEngine(11);
+		plain.setPieceLimit(500);
+		ahead.setPieceLimit(500);
+		plain.play(new DefaultBrain());
+		ahead.play(new LookaheadBrain(WIDE, Long.MAX_VALUE / 2));
+
+		assertTrue(ahead.getCount() >= plain.getCount());
+	}
+}
@@ -0,0 +1,132 @@
+package tetris;// tetris.ParallelBrain.java
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * A tetris.Brain that tries the candidate placements of a piece
+ * on several threads at once. The candidates are listed in exactly
+ * the order tetris.DefaultBrain.bestMove() tries them, cut into one
+ * contiguous chunk per thread, and every chunk is played out on its
+ * own copy of the board. Chunk winners are then compared in order
+ * with the same strict "lower score wins" test, so the move picked is
+ * always the one the serial search would pick, ties included.
+ * <p>
+ * Boards are rated with the rateBoard() of the wrapped brain, which
+ * therefore has to be safe to call from several threads at once
+ * (tetris.DefaultBrain and tetris.BadBrain are).
+ */
+public class ParallelBrain implements Brain {
+	private final DefaultBrain brain;
+	private final ForkJoinPool pool;
+
+
+	/**
+	 * Creates a parallel version of the given brain
+	 * running on the common fork-join pool.
+	 */
+	public ParallelBrain(DefaultBrain brain) {
+		this(brain, ForkJoinPool.commonPool());
+	}
+
+
+	/**
+	 * Creates a parallel version of the given brain
+	 * running on the given pool.
+	 */
+	public ParallelBrain(DefaultBrain brain, ForkJoinPool pool) {
+		this.brain = brain;
+		this.pool = pool;
+	}
+
+
+	/**
+	 * Given a piece and a board, returns a move object that represents
+	 * the best play for that piece, or returns null if no play is possible.
+	 * See the tetris.Brain interface for details.
+	 */
+	public Brain.Move bestMove(Board board, Piece piece, int limitHeight, Brain.Move move) {
+		board.commit();
+
+		// List every placement the serial search would try, in its order.
+		int rotations = 0;
+		Piece current = piece;
+		do {
+			rotations++;
+			current = current.fastRotation();
+		} while (current != piece);
+
+		final Piece[] pieces = new Piece[rotations * board.getWidth()];
+		final int[] xs = new int[pieces.length];
+		final int[] ys = new int[pieces.length];
+		int count = 0;
+
+		current = piece;
+		do {
+			final int yBound = limitHeight - current.getHeight() + 1;
+			final int xBound = board.getWidth() - current.getWidth() + 1;
+			for (int x = 0; x < xBound; x++) {
+				int y = board.dropHeight(current, x);
+				if (y < yBound) {    // piece does not stick up too far
+					pieces[count] = current;
+					xs[count] = x;
+					ys[count] = y;
+					count++;
+				}
+			}
+			current = current.fastRotation();
+		} while (current != piece);
+
+		// One contiguous chunk per thread, each remembering
+		// the first of its lowest scores.
+		final int chunks = Math.max(1, Math.min(pool.getParallelism(), count));
+		final int[] bestIndex = new int[chunks];
+		final double[] bestScore = new double[chunks];
+		ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[chunks];
+
+		for (int c = 0; c < chunks; c++) {
+			final int chunk = c;
+			final int from = count * c / chunks;
+			final int to = count * (c + 1) / chunks;
+			final Board copy = board.copy();
+
+			tasks[c] = pool.submit(() -> {
+				bestIndex[chunk] = -1;
+				bestScore[chunk] = 1e20;
+				for (int i = from; i < to; i++) {
+					int result = copy.place(pieces[i], xs[i], ys[i]);
+					if (result <= Board.PLACE_ROW_FILLED) {
+						if (result == Board.PLACE_ROW_FILLED) copy.clearRows();
+
+						double score = brain.rateBoard(copy);
+						if (score < bestScore[chunk]) {
+							bestScore[chunk] = score;
+							bestIndex[chunk] = i;
+						}
+					}
+					copy.undo();    // back out that play, loop around for the next
+				}
+			});
+		}
+
+		// Earlier chunks win ties, just like earlier candidates do.
+		int best = -1;
+		double score = 1e20;
+		for (int c = 0; c < chunks; c++) {
+			tasks[c].join();
+			if (bestIndex[c] >= 0 && bestScore[c] < score) {
+				score = bestScore[c];
+				best = bestIndex[c];
+			}
+		}
+
+		if (best < 0) return (null);    // could not find a play at all!
+
+		if (move == null) move = new Brain.Move();
+		move.x = xs[best];
+		move.y = ys[best];
+		move.piece = pieces[best];
+		move.score = score;
+		return (move);
+	}
+}
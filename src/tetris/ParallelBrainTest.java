@@ -0,0 +1,59 @@
+package tetris;
+
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/*
+  Unit test for tetris.ParallelBrain -- it must always agree
+  with the serial tetris.DefaultBrain.
+ */
+public class ParallelBrainTest {
+
+	// Every move of a long game, ties included, must match
+	@Test
+	public void testSameMoves() {
+		ForkJoinPool pool = new ForkJoinPool(3);
+		DefaultBrain serial = new DefaultBrain();
+		Brain parallel = new ParallelBrain(new DefaultBrain(), pool);
+
+		GameEngine game = new GameEngine(11);
+		game.setPieceLimit(300);
+
+		Brain.Move expected = new Brain.Move();
+		Brain.Move actual = new Brain.Move();
+		// Check every decision on the way, then let the game go on.
+		Brain checking = (b, piece, limitHeight, move) -> {
+			Brain.Move e = serial.bestMove(b, piece, limitHeight, expected);
+			Brain.Move a = parallel.bestMove(b, piece, limitHeight, actual);
+			if (e == null) {
+				assertSame(null, a);
+				return null;
+			}
+			assertSame(e.piece, a.piece);
+			assertEquals(e.x, a.x);
+			assertEquals(e.y, a.y);
+			assertEquals(e.score, a.score, 0.0);
+			return e;
+		};
+		game.play(checking);
+		pool.shutdown();
+	}
+
+	// Symmetric pieces on an empty board tie a lot -- the first one must win
+	@Test
+	public void testTies() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		Board board = new Board(10, 24);
+		for (Piece piece : Piece.getPieces()) {
+			Brain.Move e = new DefaultBrain().bestMove(board, piece, 20, null);
+			Brain.Move a = new ParallelBrain(new DefaultBrain(), pool).bestMove(board, piece, 20, null);
+			assertSame(e.piece, a.piece);
+			assertEquals(e.x, a.x);
+		}
+		pool.shutdown();
+	}
+}
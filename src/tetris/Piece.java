@@ -39,7 +39,6 @@ public class Piece {
 	public static final int S2 = 4;
 	public static final int SQUARE = 5;
 	public static final int PYRAMID = 6;
-	static private Piece[] pieces;    // singleton static array of first rotations
 	// Starter code specs out a few basic things, leaving
 	// the algorithms to be done.
 	private TPoint[] body;
@@ -48,6 +47,14 @@ public class Piece {
 	private int height;
 	private Piece next; // "next" rotation
 
+	// The same body as primitive tables, built once by the
+	// constructor so the hot loops never touch a tetris.TPoint.
+	private int[] xs;           // x of each block, in body order
+	private int[] ys;           // y of each block, in body order
+	private long[] rowMasks;    // bit x of rowMasks[y] set for each block
+	private int[] profile;      // for each x, the highest y in the body + 1
+	private int[] cells;        // (y << 16 | x) of each block, sorted
+
 	/**
 	 * Defines a new piece given a tetris.TPoint[] array of its body.
 	 * Makes its own copy of the array and the TPoints inside it.
@@ -59,6 +66,7 @@ public class Piece {
 		}
 		setMeasurements();
 		setSkirt();
+		setTables();
 	}
 
 	/**
@@ -78,24 +86,32 @@ public class Piece {
 	 * from each piece with the {@link #fastRotation()} message.
 	 * In this way, the client can iterate through all the rotations
 	 * until eventually getting back to the first rotation.
+	 * Always returns the same array and the same rotation objects,
+	 * from any thread. The caller should not modify the array.
 	 * (provided code)
 	 */
 	public static Piece[] getPieces() {
-		// lazy evaluation -- create static array if needed
-		if (Piece.pieces == null) {
-			// use makeFastRotations() to compute all the rotations for each piece
-			Piece.pieces = new Piece[]{
-					makeFastRotations(new Piece(STICK_STR)),
-					makeFastRotations(new Piece(L1_STR)),
-					makeFastRotations(new Piece(L2_STR)),
-					makeFastRotations(new Piece(S1_STR)),
-					makeFastRotations(new Piece(S2_STR)),
-					makeFastRotations(new Piece(SQUARE_STR)),
-					makeFastRotations(new Piece(PYRAMID_STR)),
-			};
-		}
+		return Standard.PIECES;
+	}
 
-		return Piece.pieces;
+	/**
+	 * Holder for the standard pieces. The JVM builds PIECES exactly
+	 * once, the first time getPieces() is called, and makes every
+	 * other thread calling it wait for that -- so there is only ever
+	 * one rotation chain per piece and fastRotation() identity checks
+	 * hold across threads. See tetris.PieceRegistry for other sets.
+	 */
+	private static class Standard {
+		// use makeFastRotations() to compute all the rotations for each piece
+		static final Piece[] PIECES = new Piece[]{
+				makeFastRotations(new Piece(STICK_STR)),
+				makeFastRotations(new Piece(L1_STR)),
+				makeFastRotations(new Piece(L2_STR)),
+				makeFastRotations(new Piece(S1_STR)),
+				makeFastRotations(new Piece(S2_STR)),
+				makeFastRotations(new Piece(SQUARE_STR)),
+				makeFastRotations(new Piece(PYRAMID_STR)),
+		};
 	}
 
 	/**
@@ -110,7 +126,7 @@ public class Piece {
 	 and tetris.Piece.equals() to detect when the rotations have gotten us back
 	 to the first piece.
 	*/
-	private static Piece makeFastRotations(Piece root) {
+	static Piece makeFastRotations(Piece root) {
 		Piece current = root; // No need to change root.
 		Piece next;
 
@@ -129,6 +145,18 @@ public class Piece {
 		return root;
 	}
 
+	/**
+	 * Links already computed rotations, given in counterclockwise
+	 * order, into the circular list fastRotation() walks, the same
+	 * one makeFastRotations() would build. Returns the first one.
+	 */
+	static Piece linkRotations(Piece[] rotations) {
+		for (int i = 0; i < rotations.length; i++) {
+			rotations[i].next = rotations[(i + 1) % rotations.length];
+		}
+		return rotations[0];
+	}
+
 	/**
 	 * Given a string of x,y pairs ("0 0	0 1 0 2 1 0"), parses
 	 * the points into a tetris.TPoint[] array.
@@ -197,6 +225,32 @@ public class Piece {
 		}
 	}
 
+	/**
+	 * Builds the primitive tables of the body. Blocks are
+	 * assumed to have 0 <= x < 64 and y >= 0, like all pieces
+	 * made by parsePoints() and computeNextRotation().
+	 */
+	private void setTables() {
+		xs = new int[body.length];
+		ys = new int[body.length];
+		rowMasks = new long[height];
+		profile = new int[width];
+		cells = new int[body.length];
+
+		for (int i = 0; i < body.length; i++) {
+			TPoint point = body[i];
+			xs[i] = point.x;
+			ys[i] = point.y;
+			rowMasks[point.y] |= 1L << point.x;
+			if (point.y + 1 > profile[point.x]) profile[point.x] = point.y + 1;
+			cells[i] = (point.y << 16) | point.x;
+		}
+
+		// Same order TPoint.compareTo() gives, so two pieces
+		// are equal exactly when these arrays are.
+		Arrays.sort(cells);
+	}
+
 	/**
 	 * Returns the width of the piece measured in blocks.
 	 */
@@ -229,6 +283,41 @@ public class Piece {
 		return skirt;
 	}
 
+	/**
+	 * Returns the x of every block of the body, in the same order
+	 * as getBody(). The caller should not modify this array.
+	 */
+	public int[] getXs() {
+		return xs;
+	}
+
+	/**
+	 * Returns the y of every block of the body, in the same order
+	 * as getBody(). The caller should not modify this array.
+	 */
+	public int[] getYs() {
+		return ys;
+	}
+
+	/**
+	 * Returns the body as one bitmask per row of the piece --
+	 * bit x of getRowMasks()[y] is set if (x, y) is in the body.
+	 * The caller should not modify this array.
+	 */
+	public long[] getRowMasks() {
+		return rowMasks;
+	}
+
+	/**
+	 * Returns the top profile of the piece: for each x value
+	 * across the piece, the highest y value in the body + 1.
+	 * The opposite of the skirt -- gives the column heights a piece
+	 * leaves behind. The caller should not modify this array.
+	 */
+	public int[] getProfile() {
+		return profile;
+	}
+
 	/**
 	 * Returns a new piece that is 90 degrees counter-clockwise
 	 * rotated from the receiver.
@@ -271,16 +360,16 @@ public class Piece {
 		if (!(obj instanceof Piece)) return false;
 		Piece other = (Piece) obj;
 
-		// Make two lists of tetris.Piece points.
-		ArrayList<TPoint> ours = new ArrayList<>(Arrays.asList(this.getBody())); // could have used this.body instead
-		ArrayList<TPoint> theirs = new ArrayList<>(Arrays.asList(other.getBody()));
-
-		// Sort them using lambda functions (yay!).
-		ours.sort((a, b) -> b.compareTo(a));
-		theirs.sort((a, b) -> b.compareTo(a));
+		// The sorted cells are the body points in a canonical
+		// order, so this compares the bodies as sets.
+		return Arrays.equals(cells, other.cells);
+	}
 
-		// Compare these two lists
-		return ours.equals(theirs);
+	/**
+	 * Hash code to go with equals().
+	 */
+	public int hashCode() {
+		return Arrays.hashCode(cells);
 	}
 
 
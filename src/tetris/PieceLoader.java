@@ -0,0 +1,177 @@
+package tetris;// tetris.PieceLoader.java
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Loads a non-standard piece set from a text file with one piece per
+ * line, in the same "x y x y ..." format as tetris.Piece(String).
+ * Blank lines and lines starting with # are ignored:
+ * <pre>
+ * # the I pentomino
+ * 0 0  0 1  0 2  0 3  0 4
+ * </pre>
+ * Every rotation of every piece is computed once and written next to
+ * the text file (same name + ".rot") as a compact binary table. Later
+ * loads read the rotations straight from that table as long as it was
+ * made from the same text, which matters for large pentomino or
+ * hexomino sets. The result is the canonical tetris.PieceRegistry set,
+ * so it can be handed to tetris.JTetris, tetris.GameEngine or any brain.
+ */
+public class PieceLoader {
+	// "TPRT" -- Tetris Piece RoTations
+	private static final int MAGIC = 0x54505254;
+	private static final int VERSION = 1;
+
+	private PieceLoader() {
+	}
+
+
+	/**
+	 * Returns the rotation table file used for the given piece file.
+	 */
+	public static Path cacheFor(Path file) {
+		return Paths.get(file.toString() + ".rot");
+	}
+
+
+	/**
+	 * Loads the piece set in the given file, using and
+	 * refreshing its rotation table.
+	 */
+	public static Piece[] load(Path file) throws IOException {
+		byte[] text = Files.readAllBytes(file);
+		CRC32 crc = new CRC32();
+		crc.update(text);
+		long checksum = crc.getValue();
+
+		Path cache = cacheFor(file);
+		Piece[] set = null;
+		if (Files.exists(cache)) {
+			try (InputStream in = Files.newInputStream(cache)) {
+				set = readTable(in, checksum);
+			} catch (IOException | RuntimeException ignored) {
+				// Broken table -- just rebuild it below.
+			}
+		}
+
+		if (set == null) {
+			set = PieceRegistry.getPieceSet(parse(new String(text, StandardCharsets.UTF_8)));
+			try (OutputStream out = Files.newOutputStream(cache)) {
+				writeTable(out, set, checksum);
+			} catch (IOException | RuntimeException ignored) {
+				// Read-only directory, or pieces too big for the table,
+				// are fine, we just won't be faster next time.
+			}
+		}
+
+		return set;
+	}
+
+
+	/**
+	 * Splits piece file text into one tetris.Piece(String)
+	 * definition per piece.
+	 */
+	public static String[] parse(String text) {
+		List<String> definitions = new ArrayList<>();
+		for (String line : text.split("\r?\n")) {
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) continue;
+			definitions.add(line);
+		}
+		if (definitions.isEmpty()) throw new RuntimeException("No pieces in piece file");
+		return definitions.toArray(new String[0]);
+	}
+
+
+	/**
+	 * Writes every rotation of every piece in the set:
+	 * magic, version, text checksum and piece count, then for each
+	 * piece its rotation count and for each rotation its block count
+	 * followed by one x and one y byte per block. Each of those
+	 * must fit an unsigned byte, else a RuntimeException is thrown
+	 * before anything is written.
+	 */
+	static void writeTable(OutputStream stream, Piece[] set, long checksum) throws IOException {
+		for (Piece root : set) {
+			int rotations = 0;
+			Piece piece = root;
+			do {
+				rotations++;
+				int[] xs = piece.getXs();
+				int[] ys = piece.getYs();
+				if (xs.length > 255) throw new RuntimeException("Too many blocks for the rotation table");
+				for (int i = 0; i < xs.length; i++) {
+					if (xs[i] < 0 || xs[i] > 255 || ys[i] < 0 || ys[i] > 255) {
+						throw new RuntimeException("Piece too big for the rotation table");
+					}
+				}
+				piece = piece.fastRotation();
+			} while (piece != root);
+			if (rotations > 255) throw new RuntimeException("Too many rotations for the rotation table");
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(checksum);
+		out.writeInt(set.length);
+
+		for (Piece root : set) {
+			int rotations = 0;
+			Piece piece = root;
+			do {
+				rotations++;
+				piece = piece.fastRotation();
+			} while (piece != root);
+			out.writeByte(rotations);
+
+			do {
+				out.writeByte(piece.getXs().length);
+				for (int i = 0; i < piece.getXs().length; i++) {
+					out.writeByte(piece.getXs()[i]);
+					out.writeByte(piece.getYs()[i]);
+				}
+				piece = piece.fastRotation();
+			} while (piece != root);
+		}
+		out.flush();
+	}
+
+
+	/**
+	 * Reads a table written by writeTable() back into a canonical
+	 * piece set, or returns null if it was made from other text.
+	 */
+	static Piece[] readTable(InputStream stream, long checksum) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+		if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != checksum) return null;
+
+		Piece[] set = new Piece[in.readInt()];
+		for (int p = 0; p < set.length; p++) {
+			Piece[] rotations = new Piece[in.readUnsignedByte()];
+			for (int r = 0; r < rotations.length; r++) {
+				TPoint[] body = new TPoint[in.readUnsignedByte()];
+				for (int i = 0; i < body.length; i++) {
+					body[i] = new TPoint(in.readUnsignedByte(), in.readUnsignedByte());
+				}
+				rotations[r] = new Piece(body);
+			}
+			set[p] = Piece.linkRotations(rotations);
+		}
+		return PieceRegistry.register(set);
+	}
+}
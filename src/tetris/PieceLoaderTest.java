@@ -0,0 +1,103 @@
+package tetris;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/*
+  Unit test for tetris.PieceLoader.
+ */
+public class PieceLoaderTest {
+	private Path dir;
+	private Path file;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("pieces");
+		file = dir.resolve("set.txt");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(PieceLoader.cacheFor(file));
+		Files.deleteIfExists(file);
+		Files.delete(dir);
+	}
+
+	private void write(String text) throws IOException {
+		Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	// Comments and blank lines are skipped.
+	@Test
+	public void testParse() {
+		String[] definitions = PieceLoader.parse("# pieces\n\n0 0 0 1\r\n  1 0 1 1 0 1  \n");
+		assertArrayEquals(new String[]{"0 0 0 1", "1 0 1 1 0 1"}, definitions);
+	}
+
+	// The standard pieces, loaded from a file, are the standard set.
+	@Test
+	public void testStandard() throws IOException {
+		write(Piece.STICK_STR + "\n" + Piece.L1_STR + "\n" + Piece.L2_STR + "\n" + Piece.S1_STR + "\n"
+				+ Piece.S2_STR + "\n" + Piece.SQUARE_STR + "\n" + Piece.PYRAMID_STR + "\n");
+		assertSame(Piece.getPieces(), PieceLoader.load(file));
+	}
+
+	// A second load reads the rotation table and gives the same set.
+	@Test
+	public void testCache() throws IOException {
+		write("# I and X pentominoes\n0 0 0 1 0 2 0 3 0 4\n1 0 0 1 1 1 2 1 1 2\n");
+		Piece[] pieces = PieceLoader.load(file);
+		assertTrue(Files.exists(PieceLoader.cacheFor(file)));
+		assertEquals(2, pieces.length);
+		assertEquals(5, pieces[0].getHeight());
+		assertEquals(5, pieces[0].fastRotation().getWidth());
+		assertSame(pieces[0], pieces[0].fastRotation().fastRotation());
+		assertSame(pieces[1], pieces[1].fastRotation());
+
+		assertSame(pieces, PieceLoader.load(file));
+	}
+
+	// A table made from other text, or a broken one, is rebuilt.
+	@Test
+	public void testStaleCache() throws IOException {
+		write("0 0 1 0 2 0 1 1 1 2\n");
+		PieceLoader.load(file);
+
+		write("0 0 1 0 2 0 2 1 2 2\n");
+		Piece[] pieces = PieceLoader.load(file);
+		assertEquals(new Piece("0 0 1 0 2 0 2 1 2 2"), pieces[0]);
+
+		Files.write(PieceLoader.cacheFor(file), new byte[]{1, 2, 3});
+		assertSame(pieces, PieceLoader.load(file));
+	}
+
+	// A piece that does not fit the byte-sized table is refused,
+	// not cut down, and still loads -- just without a table.
+	@Test
+	public void testTooBig() throws IOException {
+		Piece[] big = PieceRegistry.getPieceSet(new String[]{"0 0 0 300"});
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			PieceLoader.writeTable(out, big, 0);
+			fail("coordinate over 255");
+		} catch (RuntimeException expected) {
+		}
+		assertEquals(0, out.size());
+
+		write("0 0 0 300\n");
+		assertSame(big, PieceLoader.load(file));
+	}
+}
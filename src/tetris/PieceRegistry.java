@@ -0,0 +1,96 @@
+package tetris;// tetris.PieceRegistry.java
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Thread-safe registry of piece sets. A piece set is an array of root
+ * pieces, each linked to its rotations by fastRotation(), like the one
+ * tetris.Piece.getPieces() returns for the standard 7 pieces.
+ * <p>
+ * Sets are keyed by the shapes of their root pieces, so asking for the
+ * same set twice -- from any thread, by strings or by pieces -- always
+ * gives back the very same array and the very same rotation objects.
+ * Brains rely on that when they compare rotations with ==.
+ * <pre>
+ * tetris.Piece[] pentominoes = tetris.PieceRegistry.getPieceSet(
+ * 		"0 0  0 1  0 2  0 3  0 4",
+ * 		"0 0  1 0  1 1  1 2  2 1", ...);
+ * </pre>
+ */
+public final class PieceRegistry {
+	private static final ConcurrentMap<List<Piece>, Piece[]> sets = new ConcurrentHashMap<>();
+
+	static {
+		// The standard set is canonical too.
+		sets.put(Arrays.asList(Piece.getPieces().clone()), Piece.getPieces());
+	}
+
+	private PieceRegistry() {
+	}
+
+
+	/**
+	 * Builds the standard pieces and every rotation, so the cost is
+	 * paid at startup instead of on the first tick or in the first
+	 * simulation thread. Returns the number of rotations built.
+	 */
+	public static int warmUp() {
+		int rotations = 0;
+		for (Piece[] set : sets.values()) {
+			for (Piece root : set) {
+				Piece piece = root;
+				do {
+					rotations++;
+					piece = piece.fastRotation();
+				} while (piece != root);
+			}
+		}
+		return rotations;
+	}
+
+
+	/**
+	 * Makes the given set, with its rotations already linked, the
+	 * canonical one for its shapes -- unless another thread got there
+	 * first, in which case that set is returned instead.
+	 */
+	static Piece[] register(Piece[] set) {
+		Piece[] prior = sets.putIfAbsent(Arrays.asList(set.clone()), set);
+		return (prior != null) ? prior : set;
+	}
+
+
+	/**
+	 * Returns the canonical piece set whose root pieces are given as
+	 * "x y x y ..." strings, in the tetris.Piece(String) format.
+	 */
+	public static Piece[] getPieceSet(String... definitions) {
+		Piece[] roots = new Piece[definitions.length];
+		for (int i = 0; i < definitions.length; i++) {
+			roots[i] = new Piece(definitions[i]);
+		}
+		return getPieceSet(roots);
+	}
+
+
+	/**
+	 * Returns the canonical piece set with the given root pieces (in
+	 * that order), computing all the rotations the first time it is
+	 * asked for. The given pieces are only used as shapes.
+	 * The caller should not modify the returned array.
+	 */
+	public static Piece[] getPieceSet(Piece... roots) {
+		// computeIfAbsent() builds each set exactly once, even
+		// when several threads ask for it at the same time.
+		return sets.computeIfAbsent(Arrays.asList(roots.clone()), key -> {
+			Piece[] set = new Piece[key.size()];
+			for (int i = 0; i < set.length; i++) {
+				set[i] = Piece.makeFastRotations(new Piece(key.get(i).getBody()));
+			}
+			return set;
+		});
+	}
+}
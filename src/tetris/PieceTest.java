@@ -3,9 +3,16 @@ package tetris;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /*
@@ -155,5 +162,68 @@ public class PieceTest {
 		assertEquals(s2, s2.fastRotation().fastRotation().fastRotation().fastRotation());
 	}
 
+	// The primitive tables must describe the same body as getBody()
+	@Test
+	public void testTables() {
+		assertTrue(Arrays.equals(new int[]{0, 1, 1, 2}, pyr1.getXs()));
+		assertTrue(Arrays.equals(new int[]{0, 0, 1, 0}, pyr1.getYs()));
+		assertTrue(Arrays.equals(new long[]{0b111, 0b010}, pyr1.getRowMasks()));
+		assertTrue(Arrays.equals(new int[]{1, 2, 1}, pyr1.getProfile()));
+
+		assertTrue(Arrays.equals(new long[]{0b1111}, st2.getRowMasks()));
+		assertTrue(Arrays.equals(new int[]{1, 1, 1, 1}, st2.getProfile()));
+		assertTrue(Arrays.equals(new int[]{4}, st1.getProfile()));
+
+		assertTrue(Arrays.equals(new long[]{0b10, 0b11, 0b01}, sRotated.getRowMasks()));
+		assertTrue(Arrays.equals(new int[]{3, 2}, sRotated.getProfile()));
+
+		for (Piece piece : new Piece[]{pyr2, pyr3, l2, l4, s, sq1}) {
+			TPoint[] body = piece.getBody();
+			for (int i = 0; i < body.length; i++) {
+				assertEquals(body[i].x, piece.getXs()[i]);
+				assertEquals(body[i].y, piece.getYs()[i]);
+				assertTrue((piece.getRowMasks()[body[i].y] & (1L << body[i].x)) != 0);
+				assertTrue(piece.getProfile()[body[i].x] > body[i].y);
+			}
+		}
+	}
+
+	// Equal pieces must hash the same, whatever the body order
+	@Test
+	public void testHashCode() {
+		Piece reordered = new Piece("1 0  0 0  2 0  1 1");
+		assertTrue(pyr1.equals(reordered));
+		assertEquals(pyr1.hashCode(), reordered.hashCode());
+		assertEquals(pyr1.hashCode(), pyr4.computeNextRotation().hashCode());
+		assertTrue(!pyr1.equals(pyr2));
+	}
+
+	// Every thread must get the very same pieces and rotations
+	@Test
+	public void testRegistry() throws Exception {
+		final String[] trominoes = {"0 0  0 1  0 2", "0 0  1 0  0 1"};
+		ExecutorService threads = Executors.newFixedThreadPool(8);
+		List<Callable<Piece[]>> calls = new ArrayList<>();
+		for (int i = 0; i < 32; i++) {
+			calls.add(() -> PieceRegistry.getPieceSet(trominoes));
+		}
+
+		Piece[] first = null;
+		for (Future<Piece[]> result : threads.invokeAll(calls)) {
+			if (first == null) first = result.get();
+			assertSame(first, result.get());
+		}
+		threads.shutdown();
+
+		// Same shapes given another way are the same set.
+		assertSame(first, PieceRegistry.getPieceSet(new Piece("0 2  0 1  0 0"), new Piece(trominoes[1])));
+		assertSame(Piece.getPieces(), PieceRegistry.getPieceSet(Piece.getPieces()));
+
+		Piece bar = first[0];
+		assertSame(bar, bar.fastRotation().fastRotation());
+		Piece corner = first[1];
+		assertSame(corner, corner.fastRotation().fastRotation().fastRotation().fastRotation());
+		assertTrue(PieceRegistry.warmUp() >= 19);
+	}
 
 }
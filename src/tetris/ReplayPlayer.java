@@ -0,0 +1,238 @@
+package tetris;// tetris.ReplayPlayer.java
+
+import javax.swing.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.function.Supplier;
+
+/**
+ * Plays back games recorded by tetris.ReplayWriter. Headless, every
+ * piece is put straight where it landed and the game is checked
+ * along the way, as fast as the board goes -- so a file of recorded
+ * games can be re-verified after a change to tetris.Board. A game
+ * can also be watched in a tetris.JTetris window.
+ * <pre>
+ * int games = tetris.ReplayPlayer.verify(Paths.get("games.rpl"), tetris.Piece.getPieces(), tetris.BitBoard::new);
+ * </pre>
+ */
+public class ReplayPlayer {
+
+	private ReplayPlayer() {
+	}
+
+
+	/**
+	 * Checks every game in a replay file on both board engines, or
+	 * shows one game (numbered from 0) in a window:
+	 * ReplayPlayer replay-file [all | game to show] [piece file]
+	 */
+	public static void main(String[] args) throws Exception {
+		Path file = Paths.get(args[0]);
+		final Piece[] pieces = JTetris.loadPieces((args.length > 2) ? new String[]{args[2]} : new String[0]);
+
+		if (args.length > 1 && !args[1].equals("all")) {
+			final ReplayReader reader = new ReplayReader(file);
+			int game = Integer.parseInt(args[1]);
+			for (int i = 0; i <= game; i++) {
+				if (!reader.nextGame()) throw new RuntimeException("There is no game " + game);
+			}
+			SwingUtilities.invokeLater(() -> {
+				Viewer viewer = new Viewer(16, reader);
+				viewer.setPieces(pieces);
+				JFrame frame = JTetris.createFrame(viewer);
+				frame.setTitle("Replay of game " + game);
+				frame.setVisible(true);
+			});
+			return;
+		}
+
+		long pieceCount = countPieces(file);
+		long start = System.currentTimeMillis();
+		int games = verify(file, pieces, () -> new Board(JTetris.WIDTH, JTetris.HEIGHT + JTetris.TOP_SPACE));
+		long middle = System.currentTimeMillis();
+		verify(file, pieces, () -> new BitBoard(JTetris.WIDTH, JTetris.HEIGHT + JTetris.TOP_SPACE));
+		long end = System.currentTimeMillis();
+
+		System.out.println(games + " games, " + pieceCount + " pieces, all check out");
+		System.out.println("Board    " + (pieceCount * 1000 / Math.max(1, middle - start)) + " pieces/s");
+		System.out.println("BitBoard " + (pieceCount * 1000 / Math.max(1, end - middle)) + " pieces/s");
+	}
+
+
+	/**
+	 * Plays back every game in the given file, each on a new board
+	 * from the supplier, and checks it. Returns how many games there
+	 * were, or throws a RuntimeException at the first that fails.
+	 */
+	public static int verify(Path file, Piece[] pieces, Supplier<Board> boards) throws IOException {
+		int games = 0;
+		try (ReplayReader reader = new ReplayReader(file)) {
+			while (reader.nextGame()) {
+				try {
+					play(reader, boards.get(), pieces);
+				} catch (RuntimeException e) {
+					throw new RuntimeException("Replay game " + games + " fails: " + e.getMessage(), e);
+				}
+				games++;
+			}
+		}
+		return games;
+	}
+
+
+	/**
+	 * Plays back the pieces of the reader's current game on the given
+	 * empty board, with the given piece set. Every piece must fit where
+	 * it was recorded, and rest there on the floor or other blocks.
+	 * At the end, the rows cleared and the score must be what the game
+	 * reported. Throws a RuntimeException if anything is off.
+	 */
+	public static void play(ReplayReader reader, Board board, Piece[] pieces) throws IOException {
+		if (board.getWidth() != reader.getWidth() || board.getHeight() != reader.getHeight()) {
+			throw new RuntimeException("board is " + reader.getWidth() + "x" + reader.getHeight());
+		}
+		board.commit();
+
+		int landed = 0;
+		int rows = 0;
+		int points = 0;
+		while (reader.nextPiece()) {
+			Piece piece = reader.getPiece(pieces);
+			int x = reader.getX();
+			int y = reader.getY();
+
+			// It must not fit one lower
+			if (y > 0) {
+				int below = board.place(piece, x, y - 1);
+				board.undo();
+				if (below <= Board.PLACE_ROW_FILLED) throw new RuntimeException("piece " + landed + " does not rest");
+			}
+
+			if (board.place(piece, x, y) > Board.PLACE_ROW_FILLED) {
+				throw new RuntimeException("piece " + landed + " does not fit");
+			}
+			int cleared = board.clearRows();
+			rows += cleared;
+			points += GameEngine.rowScore(cleared);
+			board.commit();
+			landed++;
+		}
+
+		// Each piece scores 1 on top of the rows, and a game can end
+		// on one that did not fit in at the top, so never landed.
+		int unplayed = reader.getCount() - landed;
+		if (rows != reader.getRowsCleared() || points != reader.getScore() - reader.getCount()
+				|| unplayed < 0 || unplayed > 1) {
+			throw new RuntimeException("ends with " + landed + " pieces, " + rows + " rows, game said "
+					+ reader.getCount() + " pieces, " + reader.getRowsCleared() + " rows, score "
+					+ reader.getScore());
+		}
+	}
+
+
+	/**
+	 * Returns how many pieces landed in all the games of the file.
+	 */
+	private static long countPieces(Path file) throws IOException {
+		long count = 0;
+		try (ReplayReader reader = new ReplayReader(file)) {
+			while (reader.nextGame()) {
+				while (reader.nextPiece()) count++;
+			}
+		}
+		return count;
+	}
+
+
+	/**
+	 * A tetris.JTetris showing the reader's current game: every piece
+	 * comes in as recorded, moves straight to where it landed on the
+	 * next DOWN tick, and lands on the one after. The keys do nothing.
+	 */
+	private static class Viewer extends JTetris {
+		private final ReplayReader reader;
+		private final ArrayDeque<Brain.Move> targets = new ArrayDeque<Brain.Move>();
+		private Brain.Move target;    // where the current piece lands
+		private int targetFor;        // count target is for
+
+		Viewer(int pixels, ReplayReader reader) {
+			super(pixels);
+			this.reader = reader;
+			if (reader.getWidth() != WIDTH || reader.getHeight() != HEIGHT + TOP_SPACE) {
+				throw new RuntimeException("Replay board is " + reader.getWidth() + "x" + reader.getHeight());
+			}
+		}
+
+		/**
+		 * Returns the next recorded piece, in the rotation it spawns in,
+		 * and queues where it lands -- or nowhere, once the game is over.
+		 */
+		@Override
+		public Piece pickNextPiece() {
+			Brain.Move move = new Brain.Move();
+			try {
+				if (reader.nextPiece()) {
+					move.piece = reader.getPiece(pieces);
+					move.x = reader.getX();
+					move.y = reader.getY();
+					targets.add(move);
+					return pieces[reader.getPieceIndex()];
+				}
+			} catch (IOException e) {
+				throw new RuntimeException("Could not read replay", e);
+			}
+			targets.add(move);
+			return pieces[0];
+		}
+
+		/**
+		 * Ends the game instead once the recorded pieces are over.
+		 */
+		@Override
+		public void addNewPiece() {
+			Brain.Move next = targets.peek();
+			if (next != null && next.piece == null) {
+				stopGame();
+				return;
+			}
+			super.addNewPiece();
+		}
+
+		@Override
+		public void input(int verb) {
+		}
+
+		@Override
+		public void startGame() {
+			// Only one game to show
+			startButton.setEnabled(false);
+			if (targetFor == 0) super.startGame();
+		}
+
+		@Override
+		public void tick(int verb) {
+			if (!gameOn || verb != DOWN) return;
+
+			if (targetFor != count) {
+				target = targets.poll();
+				targetFor = count;
+			}
+			if (target == null || target.piece == null) {
+				stopGame();
+				return;
+			}
+
+			if (currentPiece != target.piece || currentX != target.x || currentY != target.y) {
+				board.undo();
+				if (setCurrent(target.piece, target.x, target.y) > Board.PLACE_ROW_FILLED) {
+					board.place(currentPiece, currentX, currentY);
+					stopGame();
+				}
+				return;
+			}
+			super.tick(verb);
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package tetris;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/*
+  Unit test for tetris.ReplayWriter, tetris.ReplayReader
+  and tetris.ReplayPlayer.
+ */
+public class ReplayPlayerTest {
+	private Path dir;
+	private Path file;
+	private Piece[] pieces;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("replays");
+		file = dir.resolve("games.rpl");
+		pieces = Piece.getPieces();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+		Files.delete(dir);
+	}
+
+	// Records the given number of seeded engine games
+	private int[] record(int games, long baseSeed) throws IOException {
+		int[] scores = new int[games];
+		try (ReplayWriter writer = new ReplayWriter(file)) {
+			for (int i = 0; i < games; i++) {
+				long seed = BatchRunner.seedFor(baseSeed, i);
+				GameEngine game = new GameEngine(new Board(JTetris.WIDTH, JTetris.HEIGHT + JTetris.TOP_SPACE),
+						new Random(seed), pieces);
+				game.setPieceLimit(150);
+				game.setRecorder(writer, seed);
+				scores[i] = game.play(new DefaultBrain());
+			}
+		}
+		return scores;
+	}
+
+	// Pieces, rotations, places and the header come back as written
+	@Test
+	public void testRoundTrip() throws IOException {
+		Piece l1 = pieces[Piece.L1];
+		Piece l1Turned = l1.fastRotation().fastRotation();
+		try (ReplayWriter writer = new ReplayWriter(file)) {
+			ReplayWriter.Game game = writer.startGame(-42, 10, 24, pieces);
+			game.piece(l1Turned, 3, 0);
+			game.piece(pieces[Piece.SQUARE], 8, 0);
+			assertEquals(2, game.getLanded());
+			game.end(3, 3, 0);
+		}
+		assertEquals(4 + 1 + 11 + 2 * 3 + 13, Files.size(file));
+
+		try (ReplayReader reader = new ReplayReader(file)) {
+			assertTrue(reader.nextGame());
+			assertEquals(-42, reader.getSeed());
+			assertEquals(10, reader.getWidth());
+			assertEquals(24, reader.getHeight());
+			assertEquals(7, reader.getPieceCount());
+
+			assertTrue(reader.nextPiece());
+			assertSame(l1Turned, reader.getPiece(pieces));
+			assertEquals(Piece.L1, reader.getPieceIndex());
+			assertEquals(2, reader.getRotation());
+			assertEquals(3, reader.getX());
+			assertEquals(0, reader.getY());
+
+			assertTrue(reader.nextPiece());
+			assertSame(pieces[Piece.SQUARE], reader.getPiece(pieces));
+			assertEquals(8, reader.getX());
+
+			assertFalse(reader.nextPiece());
+			assertEquals(3, reader.getCount());
+			assertEquals(3, reader.getScore());
+			assertFalse(reader.nextGame());
+		}
+	}
+
+	// Recorded engine games play back the same on both boards
+	@Test
+	public void testVerify() throws IOException {
+		int[] scores = record(8, 5);
+		assertEquals(8, ReplayPlayer.verify(file, pieces, () -> new Board(10, 24)));
+		assertEquals(8, ReplayPlayer.verify(file, pieces, () -> new BitBoard(10, 24)));
+
+		try (ReplayReader reader = new ReplayReader(file)) {
+			for (int i = 0; i < scores.length; i++) {
+				assertTrue(reader.nextGame());
+				assertEquals(BatchRunner.seedFor(5, i), reader.getSeed());
+				while (reader.nextPiece()) ;
+				assertEquals(scores[i], reader.getScore());
+			}
+			assertFalse(reader.nextGame());
+		}
+	}
+
+	// A second writer adds its games after the first one's
+	@Test
+	public void testAppend() throws IOException {
+		record(3, 1);
+		int[] scores = record(2, 2);
+		assertEquals(5, ReplayPlayer.verify(file, pieces, () -> new Board(10, 24)));
+
+		try (ReplayReader reader = new ReplayReader(file)) {
+			for (int i = 0; i < 4; i++) assertTrue(reader.nextGame());
+			assertEquals(BatchRunner.seedFor(2, 0), reader.getSeed());
+			while (reader.nextPiece()) ;
+			assertEquals(scores[0], reader.getScore());
+		}
+	}
+
+	// A piece left hanging in the air, or a score that does
+	// not add up, fails the check.
+	@Test
+	public void testBadGames() throws IOException {
+		try (ReplayWriter writer = new ReplayWriter(file)) {
+			ReplayWriter.Game game = writer.startGame(0, 10, 24, pieces);
+			game.piece(pieces[Piece.SQUARE], 0, 0);
+			game.end(1, 1, 0);
+
+			game = writer.startGame(0, 10, 24, pieces);
+			game.piece(pieces[Piece.SQUARE], 0, 1);
+			game.end(1, 1, 0);
+		}
+		try {
+			ReplayPlayer.verify(file, pieces, () -> new Board(10, 24));
+			fail("floating piece");
+		} catch (RuntimeException expected) {
+			assertTrue(expected.getMessage().startsWith("Replay game 1 "));
+		}
+
+		Files.delete(file);
+		try (ReplayWriter writer = new ReplayWriter(file)) {
+			ReplayWriter.Game game = writer.startGame(0, 10, 24, pieces);
+			game.piece(pieces[Piece.SQUARE], 0, 0);
+			game.end(1, 6, 0);
+		}
+		try {
+			ReplayPlayer.verify(file, pieces, () -> new Board(10, 24));
+			fail("bad score");
+		} catch (RuntimeException expected) {
+		}
+	}
+
+	// Anything else is not a replay
+	@Test(expected = RuntimeException.class)
+	public void testNotReplay() throws IOException {
+		Files.write(file, new byte[]{1, 2, 3, 4, 5, 6});
+		new ReplayReader(file);
+	}
+}
@@ -0,0 +1,224 @@
+package tetris;// tetris.ReplayReader.java
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads back the games in a file made by tetris.ReplayWriter,
+ * one game and one piece at a time, through a buffered file channel.
+ * <pre>
+ * tetris.ReplayReader reader = new tetris.ReplayReader(Paths.get("games.rpl"));
+ * while (reader.nextGame()) {
+ *   while (reader.nextPiece()) {
+ *     tetris.Piece piece = reader.getPiece(pieces);
+ *     board.place(piece, reader.getX(), reader.getY());
+ *     ...
+ *   }
+ *   int score = reader.getScore();
+ * }
+ * reader.close();
+ * </pre>
+ */
+public class ReplayReader implements Closeable {
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+	private boolean inGame;    // between nextGame() and the end of its pieces
+
+	// The current game
+	private long seed;
+	private int width;
+	private int height;
+	private int pieceCount;
+	private int count;
+	private int score;
+	private int rowsCleared;
+
+	// The current piece
+	private int pieceIndex;
+	private int rotation;
+	private int x;
+	private int y;
+
+
+	/**
+	 * Opens the given replay file.
+	 */
+	public ReplayReader(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		buffer.flip();
+		if (!fill(5) || buffer.getInt() != ReplayWriter.MAGIC || buffer.get() != ReplayWriter.VERSION) {
+			channel.close();
+			throw new RuntimeException("Not a replay file: " + file);
+		}
+	}
+
+
+	/**
+	 * Makes sure there are at least n bytes in the buffer, reading more
+	 * from the file as needed. Returns false if the file ends first.
+	 */
+	private boolean fill(int n) throws IOException {
+		if (buffer.remaining() >= n) return true;
+		buffer.compact();
+		while (buffer.position() < n) {
+			if (channel.read(buffer) < 0) break;
+		}
+		buffer.flip();
+		return buffer.remaining() >= n;
+	}
+
+
+	/**
+	 * Same as fill(), but a file that ends there is broken.
+	 */
+	private void need(int n) throws IOException {
+		if (!fill(n)) throw new EOFException("Replay file ends in the middle of a game");
+	}
+
+
+	/**
+	 * Moves on to the next game, skipping what is left of the current one.
+	 * Returns false if there are no more games.
+	 */
+	public boolean nextGame() throws IOException {
+		while (inGame) nextPiece();
+		if (!fill(1)) return false;
+
+		need(11);
+		seed = buffer.getLong();
+		width = buffer.get() & 0xFF;
+		height = buffer.get() & 0xFF;
+		pieceCount = buffer.get() & 0xFF;
+		count = score = rowsCleared = 0;
+		inGame = true;
+		return true;
+	}
+
+
+	/**
+	 * Moves on to the next piece of the game. Returns false once the
+	 * pieces are over -- the count, score and rows cleared are set then.
+	 */
+	public boolean nextPiece() throws IOException {
+		if (!inGame) return false;
+
+		need(1);
+		int first = buffer.get() & 0xFF;
+		if (first == ReplayWriter.END) {
+			need(12);
+			count = buffer.getInt();
+			score = buffer.getInt();
+			rowsCleared = buffer.getInt();
+			inGame = false;
+			return false;
+		}
+
+		need(2);
+		pieceIndex = first >>> 2;
+		rotation = first & 3;
+		x = buffer.get() & 0xFF;
+		y = buffer.get() & 0xFF;
+		if (pieceIndex >= pieceCount) throw new RuntimeException("Bad piece in replay");
+		return true;
+	}
+
+
+	/**
+	 * Closes the file.
+	 */
+	public void close() throws IOException {
+		channel.close();
+	}
+
+
+	/**
+	 * Returns the current piece in the given piece set, which
+	 * should be the set the game was played with.
+	 */
+	public Piece getPiece(Piece[] pieces) {
+		if (pieces.length != pieceCount) throw new RuntimeException("Replay is for another piece set");
+		Piece piece = pieces[pieceIndex];
+		for (int i = 0; i < rotation; i++) piece = piece.fastRotation();
+		return piece;
+	}
+
+	/**
+	 * Returns the seed the game was played with.
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Returns the width of the game's board.
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the height of the game's board.
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns the size of the game's piece set.
+	 */
+	public int getPieceCount() {
+		return pieceCount;
+	}
+
+	/**
+	 * Returns the index of the current piece in the piece set.
+	 */
+	public int getPieceIndex() {
+		return pieceIndex;
+	}
+
+	/**
+	 * Returns how many times the current piece
+	 * is rotated from the one in the piece set.
+	 */
+	public int getRotation() {
+		return rotation;
+	}
+
+	/**
+	 * Returns where the current piece landed.
+	 */
+	public int getX() {
+		return x;
+	}
+
+	public int getY() {
+		return y;
+	}
+
+	/**
+	 * Returns the count the game reported, once its pieces are over.
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the score the game reported, once its pieces are over.
+	 */
+	public int getScore() {
+		return score;
+	}
+
+	/**
+	 * Returns the rows cleared the game reported, once its pieces are over.
+	 */
+	public int getRowsCleared() {
+		return rowsCleared;
+	}
+}
@@ -0,0 +1,185 @@
+package tetris;// tetris.ReplayWriter.java
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Records games to a replay file, to be read back by tetris.ReplayReader
+ * and played again by tetris.ReplayPlayer. A file holds any number of
+ * games one after the other, and new games go at the end.
+ * <p>
+ * Each game is its seed, board size and piece set size, then 3 bytes for
+ * every piece that landed -- its index in the piece set and rotation
+ * (index * 4 + rotation), x and y -- then an end byte and the count,
+ * score and rows cleared the game itself reported. A 1000 piece game
+ * takes about 3K.
+ * <p>
+ * Games are recorded in memory and written whole by end(), so several
+ * threads can record games into the same file at once. Writes go
+ * through a buffer to a file channel, and reach the file for sure
+ * only after close().
+ * <pre>
+ * tetris.ReplayWriter writer = new tetris.ReplayWriter(Paths.get("games.rpl"));
+ * tetris.ReplayWriter.Game game = writer.startGame(seed, board.getWidth(), board.getHeight(), pieces);
+ * game.piece(piece, x, y);	// for each piece that lands
+ * game.end(count, score, rowsCleared);
+ * writer.close();
+ * </pre>
+ */
+public class ReplayWriter implements Closeable {
+	// "TRPL" -- Tetris RePLay
+	static final int MAGIC = 0x5452504C;
+	static final int VERSION = 1;
+	// Marks the end of the pieces of a game. Never a piece byte,
+	// as there are at most MAX_PIECES pieces.
+	static final int END = 0xFF;
+	static final int MAX_PIECES = 63;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+
+
+	/**
+	 * Opens the given replay file to add games to,
+	 * making a new one if it does not exist.
+	 */
+	public ReplayWriter(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+		if (channel.size() == 0) {
+			buffer.putInt(MAGIC);
+			buffer.put((byte) VERSION);
+		}
+	}
+
+
+	/**
+	 * Starts recording a game played with the given seed, on a board
+	 * of the given size (at most 255 each way), with the given pieces.
+	 * The game is only written once end() is called on it.
+	 */
+	public Game startGame(long seed, int width, int height, Piece[] pieces) {
+		if (width > 255 || height > 255) throw new RuntimeException("Board too big to record");
+		if (pieces.length > MAX_PIECES) throw new RuntimeException("Too many pieces to record");
+		return new Game(seed, width, height, pieces);
+	}
+
+
+	/**
+	 * Adds the given bytes to the file.
+	 */
+	private synchronized void write(byte[] bytes, int length) throws IOException {
+		int offset = 0;
+		while (offset < length) {
+			if (!buffer.hasRemaining()) flush();
+			int n = Math.min(length - offset, buffer.remaining());
+			buffer.put(bytes, offset, n);
+			offset += n;
+		}
+	}
+
+
+	/**
+	 * Writes out whatever is in the buffer.
+	 */
+	public synchronized void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) channel.write(buffer);
+		buffer.clear();
+	}
+
+
+	/**
+	 * Writes out the buffer and closes the file. Games
+	 * not ended by then are not in it.
+	 */
+	public synchronized void close() throws IOException {
+		if (!channel.isOpen()) return;
+		flush();
+		channel.close();
+	}
+
+
+	/**
+	 * One game being recorded. Only to be used by one thread.
+	 */
+	public class Game {
+		private final Piece[] pieces;
+		private byte[] bytes = new byte[256];
+		private int length;
+		private int landed;    // how many pieces so far
+
+		Game(long seed, int width, int height, Piece[] pieces) {
+			this.pieces = pieces;
+			for (int shift = 56; shift >= 0; shift -= 8) add((int) (seed >>> shift));
+			add(width);
+			add(height);
+			add(pieces.length);
+		}
+
+		/**
+		 * Records that the given piece, one of the rotations
+		 * of the game's piece set, landed at x, y.
+		 */
+		public void piece(Piece piece, int x, int y) {
+			// Find which piece and rotation it is
+			for (int i = 0; i < pieces.length; i++) {
+				Piece current = pieces[i];
+				int rotation = 0;
+				do {
+					if (current == piece) {
+						if (rotation > 3) throw new RuntimeException("Too many rotations to record");
+						add((i << 2) | rotation);
+						add(x);
+						add(y);
+						landed++;
+						return;
+					}
+					current = current.fastRotation();
+					rotation++;
+				} while (current != pieces[i] && current != null);
+			}
+			throw new RuntimeException("Piece is not in the recorded set");
+		}
+
+		/**
+		 * Returns how many pieces have been recorded.
+		 */
+		public int getLanded() {
+			return landed;
+		}
+
+		/**
+		 * Ends the game, with the count, score and rows cleared it
+		 * reports, and adds it to the file.
+		 */
+		public void end(int count, int score, int rowsCleared) {
+			add(END);
+			addInt(count);
+			addInt(score);
+			addInt(rowsCleared);
+			try {
+				write(bytes, length);
+			} catch (IOException e) {
+				throw new RuntimeException("Could not write replay", e);
+			}
+		}
+
+		private void add(int value) {
+			if (length == bytes.length) bytes = Arrays.copyOf(bytes, length * 2);
+			bytes[length++] = (byte) value;
+		}
+
+		private void addInt(int value) {
+			add(value >>> 24);
+			add(value >>> 16);
+			add(value >>> 8);
+			add(value);
+		}
+	}
+}